@@ -0,0 +1,58 @@
+package no.hib.mod252.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import no.hib.mod252.BidCodec;
+
+/**
+ * Measures reading and writing the content of the messages of a round (see BidCodec).
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BidCodecBenchmark {
+
+	@Param({ "10", "100", "1000", "10000", "100000" })
+	private int responders;
+
+	private byte[][] contents;
+
+	@Setup
+	public void setup() {
+		contents = Responses.cfps(responders);
+	}
+
+	@Benchmark
+	public long decode() {
+		long sum = 0;
+		for (byte[] content : contents) {
+			if (BidCodec.isBid(content)) {
+				sum += BidCodec.amount(content) + BidCodec.jobId(content) + BidCodec.round(content) + BidCodec.deadline(content);
+			}
+		}
+		return sum;
+	}
+
+	@Benchmark
+	public void encode(Blackhole blackhole) {
+		for (int i = 0; i < contents.length; i++) {
+			blackhole.consume(BidCodec.encode(Responses.JOB_ID, Responses.PAYMENT - i, 2, 0, Responses.TITLE));
+		}
+	}
+}
@@ -0,0 +1,68 @@
+package no.hib.mod252.benchmark;
+
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import no.hib.mod252.BidCodec;
+import no.hib.mod252.BiddingStrategy;
+
+/**
+ * Measures the work every carrier does to answer the CFP of a round (see CarrierAgent):
+ * reading the payment, deciding the bid with each bidding strategy, and encoding the PROPOSE content.
+ * The score is the time it takes all the responders of a round together.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CarrierBidBenchmark {
+
+	@Param({ "10", "100", "1000", "10000", "100000" })
+	private int responders;
+
+	@Param({ "undercut", "fixed-step", "reservation", "truthful" })
+	private String strategyName;
+
+	private byte[][] cfps;
+	private BiddingStrategy strategy;
+	private SplittableRandom random;
+	private long lowerBound;
+
+	@Setup
+	public void setup() {
+		cfps = Responses.cfps(responders);
+		strategy = BiddingStrategy.forName(strategyName);
+		random = new SplittableRandom(42);
+		lowerBound = Responses.PAYMENT / 2;
+	}
+
+	@Benchmark
+	public void decide(Blackhole blackhole) {
+		for (byte[] cfp : cfps) {
+			blackhole.consume(strategy.bid(BidCodec.amount(cfp), lowerBound, BidCodec.round(cfp), random));
+		}
+	}
+
+	@Benchmark
+	public void decideAndEncode(Blackhole blackhole) {
+		for (byte[] cfp : cfps) {
+			long bid = strategy.bid(BidCodec.amount(cfp), lowerBound, BidCodec.round(cfp), random);
+			blackhole.consume(BidCodec.encode(BidCodec.jobId(cfp), bid, BidCodec.round(cfp), BidCodec.deadline(cfp)));
+		}
+	}
+}
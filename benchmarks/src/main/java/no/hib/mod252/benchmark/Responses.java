@@ -0,0 +1,55 @@
+package no.hib.mod252.benchmark;
+
+import java.util.Random;
+import java.util.Vector;
+
+import jade.core.AID;
+import jade.lang.acl.ACLMessage;
+import no.hib.mod252.BidCodec;
+
+/**
+ * Creates the messages of a round, as they would arrive at a company from its carriers.
+ * The bids are drawn from a seeded random number generator, so every run sees the same round.
+ */
+final class Responses {
+	static final long JOB_ID = 1;
+	static final long PAYMENT = BidCodec.cents(1000);
+	static final byte[] TITLE = BidCodec.encodeTitle("Benchmark Job");
+
+	private Responses() {
+	}
+
+	/**
+	 * Creates a PROPOSE message for each responder, with bids between half the payment and the payment.
+	 * @param responders - the amount of responders
+	 * @param round - the round the bids belong to
+	 * @return - ^
+	 */
+	static Vector<ACLMessage> proposals(int responders, int round) {
+		Random random = new Random(42);
+		Vector<ACLMessage> responses = new Vector<ACLMessage>(responders);
+		for (int i = 0; i < responders; i++) {
+			ACLMessage propose = new ACLMessage(ACLMessage.PROPOSE);
+			propose.setSender(new AID("Carrier" + i + "@benchmark", AID.ISGUID));
+			propose.setConversationId("Company-1");
+			propose.setReplyWith("R" + i);
+			propose.setByteSequenceContent(BidCodec.encode(JOB_ID, PAYMENT / 2 + random.nextInt((int) (PAYMENT / 2)), round, 0));
+			responses.addElement(propose);
+		}
+		return responses;
+	}
+
+	/**
+	 * Creates the content of a CFP for each responder, with the payment of a round in progress.
+	 * @param responders - the amount of responders
+	 * @return - ^
+	 */
+	static byte[][] cfps(int responders) {
+		Random random = new Random(42);
+		byte[][] contents = new byte[responders][];
+		for (int i = 0; i < responders; i++) {
+			contents[i] = BidCodec.encode(JOB_ID, PAYMENT - BidCodec.cents(random.nextInt(100)), 2, 0, TITLE);
+		}
+		return contents;
+	}
+}
@@ -0,0 +1,64 @@
+package no.hib.mod252.benchmark;
+
+import java.util.Date;
+import java.util.Vector;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import jade.lang.acl.ACLMessage;
+import no.hib.mod252.BidCodec;
+import no.hib.mod252.RoundBuilder;
+
+/**
+ * Measures how a company (see CompanyAgent) closes a round of an iterated auction:
+ * finding the best proposal and building the CFPs of the next round.
+ * "firstRound" creates the CFP of every responder, while "laterRound" reuses the CFPs of an earlier round.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RoundBenchmark {
+
+	@Param({ "10", "100", "1000", "10000", "100000" })
+	private int responders;
+
+	private Vector<ACLMessage> responses;
+	private RoundBuilder builder;
+	private Date replyBy;
+
+	@Setup
+	public void setup() {
+		responses = Responses.proposals(responders, 1);
+		builder = new RoundBuilder();
+		replyBy = new Date(System.currentTimeMillis() + 10000);
+		builder.build(responses, Responses.PAYMENT, content(), replyBy);
+	}
+
+	@Benchmark
+	public long firstRound() {
+		return new RoundBuilder().build(responses, Responses.PAYMENT, content(), replyBy);
+	}
+
+	@Benchmark
+	public long laterRound() {
+		return builder.build(responses, Responses.PAYMENT, content(), replyBy);
+	}
+
+	private byte[] content() {
+		return BidCodec.encode(Responses.JOB_ID, Responses.PAYMENT, 2, replyBy.getTime(), Responses.TITLE);
+	}
+}
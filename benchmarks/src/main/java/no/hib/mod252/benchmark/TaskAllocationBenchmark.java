@@ -0,0 +1,61 @@
+package no.hib.mod252.benchmark;
+
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import no.hib.mod252.TaskAllocation;
+
+/**
+ * Measures how a carrier (see CarrierNegotiationAgent) allocates the tasks of a delegated job between its employees:
+ * the default deal is improved by transfers and swaps until no deal lowers the total cost.
+ * Each employee may take on a fair share of the tasks, plus a fifth.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TaskAllocationBenchmark {
+
+	@Param({ "2", "10", "50" })
+	private int employees;
+
+	@Param({ "4", "100", "500" })
+	private int tasks;
+
+	private long[][] costs;
+	private int[] capacities;
+
+	@Setup
+	public void setup() {
+		SplittableRandom random = new SplittableRandom(1);
+		costs = new long[employees][tasks];
+		capacities = new int[employees];
+		for (int e = 0; e < employees; e++) {
+			capacities[e] = (tasks + employees - 1) / employees + Math.max(1, tasks / employees / 5);
+			for (int t = 0; t < tasks; t++) {
+				costs[e][t] = random.nextInt(100) + 1;
+			}
+		}
+	}
+
+	@Benchmark
+	public long negotiate() {
+		TaskAllocation allocation = new TaskAllocation(costs, capacities);
+		allocation.negotiate();
+		return allocation.getTotalCost();
+	}
+}
@@ -0,0 +1,56 @@
+package no.hib.mod252.benchmark;
+
+import java.util.Vector;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import jade.lang.acl.ACLMessage;
+import no.hib.mod252.BidCodec;
+import no.hib.mod252.SecondPriceSelector;
+
+/**
+ * Measures how a company (see VickreyCompanyAgent) settles a sealed-bid auction:
+ * the winner and the clearing price are found in a single pass over the proposals.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class VickreySelectionBenchmark {
+
+	@Param({ "10", "100", "1000", "10000", "100000" })
+	private int responders;
+
+	private Vector<ACLMessage> responses;
+	private SecondPriceSelector selector;
+
+	@Setup
+	public void setup() {
+		responses = Responses.proposals(responders, 1);
+		selector = new SecondPriceSelector(Responses.PAYMENT);
+	}
+
+	@Benchmark
+	public long settle() {
+		selector.reset(Responses.PAYMENT);
+		int size = responses.size();
+		for (int i = 0; i < size; i++) {
+			ACLMessage msg = responses.get(i);
+			selector.offer(i, msg.getSender().getName(), BidCodec.amount(msg.getByteSequenceContent()));
+		}
+		return selector.getClearingPrice();
+	}
+}
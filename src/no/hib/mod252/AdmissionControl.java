@@ -0,0 +1,119 @@
+package no.hib.mod252;
+
+import java.util.HashSet;
+
+import jade.core.Agent;
+import jade.core.behaviours.Behaviour;
+import jade.core.behaviours.OneShotBehaviour;
+import jade.lang.acl.ACLMessage;
+
+/**
+ * This class limits how many auctions a carrier takes part in at the same time. Every auction gets a responder behaviour
+ * of its own (see SSResponderDispatcher), and a job the carrier wins keeps its conversation going until the job is taken on,
+ * so the capacity bounds both the behaviours of the agent and the jobs it holds at once.
+ *
+ * Once the carrier is full, a new CFP is refused right away, without working out a bid or creating a responder.
+ * The carrier also marks itself as saturated in the DF (see DFHelper.setSaturated), such that the companies stop sending it CFPs
+ * (see ServiceDirectory). The mark is lifted once a quarter of the capacity is free again, so it doesn't flap with every auction.
+ * The instance is meant to be used by the behaviours of a single agent, and is therefore not thread safe.
+ *
+ * System properties:
+ * "carrier.capacity" - the largest amount of auctions a carrier takes part in at the same time (default 0, i.e. no limit)
+ */
+public class AdmissionControl {
+	private final AuctionMetrics metrics = AuctionMetrics.getInstance();
+	private final Agent agent;
+	private final int capacity;
+	private final int resume;
+	private final HashSet<String> admitted = new HashSet<String>();
+	private boolean saturated = false;
+	private long shed = 0;
+
+	/**
+	 * @param agent - the carrier
+	 */
+	public AdmissionControl(Agent agent) {
+		this(agent, Integer.getInteger("carrier.capacity", 0));
+	}
+
+	/**
+	 * @param agent - the carrier
+	 * @param capacity - the largest amount of auctions at the same time, 0 for no limit
+	 */
+	public AdmissionControl(Agent agent, int capacity) {
+		this.agent = agent;
+		this.capacity = Math.max(0, capacity);
+		this.resume = this.capacity * 3 / 4;
+	}
+
+	/**
+	 * Admits the auction of a CFP, unless the carrier is full.
+	 * @param conversationId - the conversation-id of the auction
+	 * @return - true if the carrier takes part in the auction
+	 */
+	public boolean admit(String conversationId) {
+		if (capacity > 0 && admitted.size() >= capacity && !admitted.contains(conversationId)) {
+			shed++;
+			metrics.cfpShed();
+			return false;
+		}
+		admitted.add(conversationId);
+		if (!saturated && capacity > 0 && admitted.size() >= capacity) {
+			saturated = true;
+			DFHelper.getInstance().setSaturated(agent, true);
+		}
+		return true;
+	}
+
+	/**
+	 * Frees the place of an auction which has ended.
+	 * @param conversationId - the conversation-id of the auction
+	 */
+	public void release(String conversationId) {
+		if (admitted.remove(conversationId) && saturated && admitted.size() <= resume) {
+			saturated = false;
+			DFHelper.getInstance().setSaturated(agent, false);
+		}
+	}
+
+	/**
+	 * Creates a behaviour which refuses a CFP the carrier has no room for, in place of a responder.
+	 * @param cfp - the CFP
+	 * @return - ^
+	 */
+	public Behaviour refuse(final ACLMessage cfp) {
+		return new OneShotBehaviour(agent) {
+			private static final long serialVersionUID = 1L;
+
+			public void action() {
+				ACLMessage refuse = cfp.createReply();
+				refuse.setPerformative(ACLMessage.REFUSE);
+				myAgent.send(refuse);
+			}
+		};
+	}
+
+	/**
+	 * Returns the amount of auctions the carrier takes part in.
+	 * @return - ^
+	 */
+	public int getAdmitted() {
+		return admitted.size();
+	}
+
+	/**
+	 * Returns the amount of CFPs refused since the carrier was full.
+	 * @return - ^
+	 */
+	public long getShed() {
+		return shed;
+	}
+
+	/**
+	 * Tells whether the carrier is marked as saturated in the DF.
+	 * @return - ^
+	 */
+	public boolean isSaturated() {
+		return saturated;
+	}
+}
@@ -0,0 +1,38 @@
+package no.hib.mod252;
+
+import java.util.SplittableRandom;
+
+/**
+ * This class creates the random generator of an agent. If a seed is given, each agent gets a generator of its own,
+ * seeded from the seed and the agent's name, so an agent draws the same numbers in every run, however the agents are scheduled.
+ * Without a seed, every generator is seeded differently.
+ *
+ * System properties:
+ * "auction.seed" - the seed of the generators (default none)
+ */
+public final class AgentRandom {
+	private static final long GOLDEN_GAMMA = 0x9E3779B97F4A7C15L;
+
+	private AgentRandom() {
+	}
+
+	/**
+	 * Creates the random generator of an agent.
+	 * @param name - the local name of the agent
+	 * @return - ^, seeded from "auction.seed" and the name if the property is set
+	 */
+	public static SplittableRandom forAgent(String name) {
+		Long seed = Long.getLong("auction.seed");
+		return seed == null ? new SplittableRandom() : forAgent(seed, name);
+	}
+
+	/**
+	 * Creates the random generator of an agent from a given seed.
+	 * @param seed - the seed of the run
+	 * @param name - the local name of the agent
+	 * @return - ^
+	 */
+	public static SplittableRandom forAgent(long seed, String name) {
+		return new SplittableRandom(seed + GOLDEN_GAMMA * name.hashCode());
+	}
+}
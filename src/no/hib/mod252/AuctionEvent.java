@@ -0,0 +1,116 @@
+package no.hib.mod252;
+
+/**
+ * This class describes something that happened during an auction, e.g. a bid that was received.
+ * The events are kept in the ring buffer of AuctionLog and are reused,
+ * so a sink must copy the values it wants to keep instead of keeping the event itself.
+ */
+public final class AuctionEvent {
+
+	/**
+	 * The level an event is logged at. Events below the level of AuctionLog are discarded before they're created.
+	 */
+	public enum Level {
+		TRACE, INFO, WARN, OFF
+	}
+
+	public enum Type {
+		REGISTERED(Level.INFO),
+		DEREGISTERED(Level.INFO),
+		JOB_ISSUED(Level.INFO),
+		AUCTION_STARTED(Level.INFO),
+		BID_RECEIVED(Level.TRACE),
+		BID_REFUSED(Level.TRACE),
+		RESPONDER_FAILED(Level.WARN),
+		RESPONDER_REMOVED(Level.TRACE),
+		ROUND_CLOSED(Level.INFO),
+		AWARDED(Level.INFO),
+		NOT_AWARDED(Level.INFO),
+		JOB_ACCEPTED(Level.INFO),
+		JOB_REJECTED(Level.TRACE),
+		MESSAGE(Level.INFO),
+		WARNING(Level.WARN);
+
+		private final Level level;
+
+		private Type(Level level) {
+			this.level = level;
+		}
+
+		public Level getLevel() {
+			return level;
+		}
+	}
+
+	private Type type;
+	private long timestamp;
+	private String source;
+	private String conversationId;
+	private long amount;
+	private int round;
+	private int count;
+	private String detail;
+
+	void set(Type type, long timestamp, String source, String conversationId, long amount, int round, int count, String detail) {
+		this.type = type;
+		this.timestamp = timestamp;
+		this.source = source;
+		this.conversationId = conversationId;
+		this.amount = amount;
+		this.round = round;
+		this.count = count;
+		this.detail = detail;
+	}
+
+	public Type getType() {
+		return type;
+	}
+
+	/**
+	 * Returns the time (in milliseconds) the event was published.
+	 * @return - ^
+	 */
+	public long getTimestamp() {
+		return timestamp;
+	}
+
+	/**
+	 * Returns the name of the agent the event is about.
+	 * @return - ^
+	 */
+	public String getSource() {
+		return source;
+	}
+
+	public String getConversationId() {
+		return conversationId;
+	}
+
+	/**
+	 * Returns the amount (in cents) of a bid or an award.
+	 * @return - ^
+	 */
+	public long getAmount() {
+		return amount;
+	}
+
+	public int getRound() {
+		return round;
+	}
+
+	/**
+	 * Returns a count related to the event, e.g. the amount of carriers or responses.
+	 * @return - ^
+	 */
+	public int getCount() {
+		return count;
+	}
+
+	/**
+	 * Returns the text of the event, e.g. a job title, the name of a winner or a message.
+	 * @return - ^
+	 */
+	public String getDetail() {
+		return detail;
+	}
+}
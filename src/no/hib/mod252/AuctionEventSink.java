@@ -0,0 +1,23 @@
+package no.hib.mod252;
+
+import java.io.IOException;
+
+/**
+ * A destination for auction events, e.g. the console or a file.
+ * The methods are called by the writer thread of AuctionLog only, so a sink doesn't need to be thread safe.
+ */
+public interface AuctionEventSink {
+
+	/**
+	 * Receives an event. The event is reused once the method returns, so it must not be kept.
+	 * @param event - the event
+	 * @throws IOException - if the event couldn't be written
+	 */
+	void write(AuctionEvent event) throws IOException;
+
+	/**
+	 * Is called after each batch of events.
+	 * @throws IOException - if the events couldn't be written
+	 */
+	void flush() throws IOException;
+}
@@ -0,0 +1,375 @@
+package no.hib.mod252;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.locks.LockSupport;
+import java.util.zip.CRC32;
+
+/**
+ * This class is an append-only journal of the auctions of a single company, kept in a memory-mapped file.
+ * The company records when a job is opened, each round, the proposal it accepts, and how the job ends.
+ * If the container crashes, the company replays its journal on restart, and resumes the jobs which were still open.
+ * Bids and refusals aren't recorded, since a resumed auction asks the carriers again, and has no use for them.
+ * A job whose winner was sent an ACCEPT_PROPOSAL isn't auctioned again, as the winner may have taken it on already.
+ *
+ * Appending a record is a copy into the mapped file, so it costs no system call. A background thread
+ * forces the journals which have changed to disk at a fixed interval, so one flush covers every record written meanwhile (group commit).
+ * Records are small and binary: a carrier's name is written once, and the records of it refer to it by number.
+ *
+ * A record is laid out as follows, where the length is written last, such that a record is either complete or absent:
+ * [length (4 bytes)][type (1 byte)][job id (8 bytes)][round (4 bytes)][amount (8 bytes)][reference (4 bytes)][text (UTF-8)][CRC32 (4 bytes)]
+ *
+ * The journal is written by the agent which owns it only, and is therefore not thread safe (except for the background flush).
+ *
+ * System properties:
+ * "auction.journal" - the directory of the journals (no journal is kept if it's not set)
+ * "auction.journal.commit" - how often (in milliseconds) the journals are forced to disk (default 10)
+ */
+public final class AuctionJournal {
+	private static final byte JOB_OPENED = 1;
+	private static final byte ROUND_OPENED = 2;
+	private static final byte CARRIER = 3;
+	// 4 and 5 were bids and refusals, which older journals may still hold
+	private static final byte AWARDED = 6;
+	private static final byte CLOSED = 7;
+	private static final byte ACCEPTED = 8;
+
+	private static final int HEADER = 1 + 8 + 4 + 8 + 4;
+	private static final int INITIAL_CAPACITY = 1 << 22;
+	private static final CopyOnWriteArrayList<AuctionJournal> journals = new CopyOnWriteArrayList<AuctionJournal>();
+	private static Thread committer = null;
+
+	private final RandomAccessFile randomAccessFile;
+	private final FileChannel channel;
+	private final HashMap<String, Integer> carriers = new HashMap<String, Integer>();
+	private final CRC32 crc = new CRC32();
+	private final List<OpenJob> openJobs;
+	private byte[] record = new byte[256];
+	private volatile MappedByteBuffer buffer;
+	private volatile boolean dirty = false;
+	private int position = 0;
+
+	/**
+	 * Opens the journal of a company, if journals are enabled (see the "auction.journal" property).
+	 * @param owner - the local name of the company
+	 * @return - the journal, or null if journals are disabled or the journal couldn't be opened
+	 */
+	public static AuctionJournal open(String owner) {
+		String directory = System.getProperty("auction.journal");
+		if (directory == null) {
+			return null;
+		}
+		try {
+			return new AuctionJournal(new File(directory, owner + ".journal"));
+		} catch (IOException e) {
+			e.printStackTrace();
+			return null;
+		}
+	}
+
+	/**
+	 * Replays the journal (if the file exists), and replaces it with a compacted journal holding only the jobs which are still open.
+	 * The compacted journal is written next to the old one, and moved in place once it's on disk, so a crash meanwhile loses nothing.
+	 * @param file - the file of the journal
+	 * @throws IOException - if the file couldn't be read or written
+	 */
+	private AuctionJournal(File file) throws IOException {
+		file.getAbsoluteFile().getParentFile().mkdirs();
+		openJobs = file.exists() ? replay(file) : new ArrayList<OpenJob>();
+
+		File compacted = new File(file.getPath() + ".tmp");
+		try (FileOutputStream output = new FileOutputStream(compacted)) {
+			for (OpenJob job : openJobs) {
+				output.write(record, 0, encode(JOB_OPENED, job.id, 0, job.payment, 0, BidCodec.encodeTitle(job.title)));
+				output.write(record, 0, encode(ROUND_OPENED, job.id, job.round, 0, 0, null));
+				if (job.winner != null) {
+					if (!carriers.containsKey(job.winner)) {
+						carriers.put(job.winner, carriers.size() + 1);
+						output.write(record, 0, encode(CARRIER, 0, 0, 0, carriers.size(), job.winner.getBytes(StandardCharsets.UTF_8)));
+					}
+					output.write(record, 0, encode(ACCEPTED, job.id, job.round, job.accepted, carriers.get(job.winner), null));
+				}
+			}
+			output.getFD().sync();
+			position = (int) output.getChannel().position();
+		}
+		Files.move(compacted.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+
+		randomAccessFile = new RandomAccessFile(file, "rw");
+		channel = randomAccessFile.getChannel();
+		buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, Math.max(INITIAL_CAPACITY, position * 2L));
+
+		journals.add(this);
+		startCommitter();
+	}
+
+	/**
+	 * Returns the jobs which were still open according to the journal, in the order they were opened.
+	 * @return - ^ (empty if there was no journal, i.e. the company is started for the first time)
+	 */
+	public List<OpenJob> getOpenJobs() {
+		return Collections.unmodifiableList(openJobs);
+	}
+
+	public void jobOpened(long jobId, long payment, byte[] encodedTitle) {
+		append(JOB_OPENED, jobId, 0, payment, 0, encodedTitle);
+	}
+
+	public void roundOpened(long jobId, int round) {
+		append(ROUND_OPENED, jobId, round, 0, 0, null);
+	}
+
+	/**
+	 * Records that the winner of a job is about to be sent an ACCEPT_PROPOSAL, and forces the record to disk,
+	 * since the proposal can't be taken back once it's sent.
+	 * @param jobId - the id of the job
+	 * @param round - the last round of the auction
+	 * @param winner - the name of the winner
+	 * @param amount - the accepted proposal in cents
+	 */
+	public void accepted(long jobId, int round, String winner, long amount) {
+		append(ACCEPTED, jobId, round, amount, carrier(winner), null);
+		dirty = false;
+		buffer.force();
+	}
+
+	public void awarded(long jobId, int round, String winner, long amount) {
+		append(AWARDED, jobId, round, amount, carrier(winner), null);
+	}
+
+	/**
+	 * Records that a job is over, whether it was awarded or not.
+	 * @param jobId - the id of the job
+	 */
+	public void closed(long jobId) {
+		append(CLOSED, jobId, 0, 0, 0, null);
+	}
+
+	/**
+	 * Forces the journal to disk, and closes it.
+	 */
+	public void close() {
+		journals.remove(this);
+		try {
+			buffer.force();
+			channel.truncate(position);
+			randomAccessFile.close();
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+	}
+
+	/**
+	 * Returns the number of a carrier, and records its name the first time it's seen.
+	 */
+	private int carrier(String name) {
+		Integer number = carriers.get(name);
+		if (number == null) {
+			number = carriers.size() + 1;
+			carriers.put(name, number);
+			append(CARRIER, 0, 0, 0, number, name.getBytes(StandardCharsets.UTF_8));
+		}
+		return number;
+	}
+
+	private void append(byte type, long jobId, int round, long amount, int reference, byte[] text) {
+		int size = encode(type, jobId, round, amount, reference, text);
+		try {
+			ensureCapacity(size + 4);
+		} catch (IOException e) {
+			e.printStackTrace();
+			return;
+		}
+
+		MappedByteBuffer buffer = this.buffer;
+		buffer.position(position + 4);
+		buffer.put(record, 4, size - 4);
+		buffer.putInt(position, size - 4);
+		position += size;
+		dirty = true;
+	}
+
+	/**
+	 * Encodes a record (including its length) into the reusable record buffer.
+	 * @return - the size of the record in bytes
+	 */
+	private int encode(byte type, long jobId, int round, long amount, int reference, byte[] text) {
+		int length = HEADER + (text == null ? 0 : text.length) + 4;
+		if (record.length < 4 + length) {
+			record = new byte[Math.max(4 + length, record.length * 2)];
+		}
+		BidCodec.writeInt(record, 0, length);
+		record[4] = type;
+		BidCodec.writeLong(record, 5, jobId);
+		BidCodec.writeInt(record, 13, round);
+		BidCodec.writeLong(record, 17, amount);
+		BidCodec.writeInt(record, 25, reference);
+		if (text != null) {
+			System.arraycopy(text, 0, record, 4 + HEADER, text.length);
+		}
+		crc.reset();
+		crc.update(record, 4, length - 4);
+		BidCodec.writeInt(record, length, (int) crc.getValue());
+		return 4 + length;
+	}
+
+	/**
+	 * Maps a larger part of the file once the journal is about to run out of space. The end of the journal is marked by a length of 0,
+	 * which is why room for one more length is kept.
+	 */
+	private void ensureCapacity(int needed) throws IOException {
+		if (position + needed <= buffer.capacity()) {
+			return;
+		}
+		long capacity = buffer.capacity();
+		while (position + needed > capacity) {
+			capacity *= 2;
+		}
+		buffer.force();
+		buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, capacity);
+	}
+
+	/**
+	 * Reads every complete record of a journal, and returns the jobs which were opened but never closed (or awarded).
+	 * A record which was cut short by a crash (or fails its checksum) ends the replay.
+	 */
+	private static List<OpenJob> replay(File file) throws IOException {
+		LinkedHashMap<Long, OpenJob> jobs = new LinkedHashMap<Long, OpenJob>();
+		HashMap<Integer, String> names = new HashMap<Integer, String>();
+		byte[] content = Files.readAllBytes(file.toPath());
+		CRC32 crc = new CRC32();
+
+		int position = 0;
+		while (position + 4 <= content.length) {
+			int length = BidCodec.readInt(content, position);
+			int start = position + 4;
+			if (length < HEADER + 4 || start + length > content.length) {
+				break;
+			}
+			crc.reset();
+			crc.update(content, start, length - 4);
+			if ((int) crc.getValue() != BidCodec.readInt(content, start + length - 4)) {
+				break;
+			}
+
+			byte type = content[start];
+			long jobId = BidCodec.readLong(content, start + 1);
+			int round = BidCodec.readInt(content, start + 9);
+			long amount = BidCodec.readLong(content, start + 13);
+			int reference = BidCodec.readInt(content, start + 21);
+			if (type == JOB_OPENED) {
+				String title = new String(content, start + HEADER, length - HEADER - 4, StandardCharsets.UTF_8);
+				jobs.put(jobId, new OpenJob(jobId, title, amount));
+			} else if (type == CARRIER) {
+				names.put(reference, new String(content, start + HEADER, length - HEADER - 4, StandardCharsets.UTF_8));
+			} else if (type == ROUND_OPENED && jobs.containsKey(jobId)) {
+				jobs.get(jobId).round = round;
+			} else if (type == ACCEPTED && jobs.containsKey(jobId)) {
+				OpenJob job = jobs.get(jobId);
+				job.round = round;
+				job.winner = names.get(reference);
+				job.accepted = amount;
+			} else if (type == AWARDED || type == CLOSED) {
+				jobs.remove(jobId);
+			}
+			position = start + length;
+		}
+		return new ArrayList<OpenJob>(jobs.values());
+	}
+
+	/**
+	 * Starts the thread which forces the journals to disk, unless it's running already.
+	 */
+	private static synchronized void startCommitter() {
+		if (committer != null) {
+			return;
+		}
+		final long interval = Long.getLong("auction.journal.commit", 10) * 1000000L;
+		committer = new Thread(new Runnable() {
+			public void run() {
+				while (true) {
+					LockSupport.parkNanos(interval);
+					for (AuctionJournal journal : journals) {
+						if (journal.dirty) {
+							journal.dirty = false;
+							journal.buffer.force();
+						}
+					}
+				}
+			}
+		}, "auction-journal-committer");
+		committer.setDaemon(true);
+		committer.start();
+	}
+
+	/**
+	 * A job which was still open when the journal was last written.
+	 */
+	public static final class OpenJob {
+		private final long id;
+		private final String title;
+		private final long payment;
+		private int round = 1;
+		private String winner = null;
+		private long accepted = 0;
+
+		private OpenJob(long id, String title, long payment) {
+			this.id = id;
+			this.title = title;
+			this.payment = payment;
+		}
+
+		public long getId() {
+			return id;
+		}
+
+		public String getTitle() {
+			return title;
+		}
+
+		/**
+		 * Returns the starting payment of the job, which the job was opened with.
+		 * @return - ^ in cents
+		 */
+		public long getPayment() {
+			return payment;
+		}
+
+		/**
+		 * Returns the last round which was opened.
+		 * @return - ^
+		 */
+		public int getRound() {
+			return round;
+		}
+
+		/**
+		 * Returns the carrier which was sent an ACCEPT_PROPOSAL for the job, without confirming it before the journal ended.
+		 * @return - the name of ^, or null if no proposal was accepted
+		 */
+		public String getWinner() {
+			return winner;
+		}
+
+		/**
+		 * Returns the proposal which was accepted.
+		 * @return - ^ in cents, 0 if none
+		 */
+		public long getAccepted() {
+			return accepted;
+		}
+	}
+}
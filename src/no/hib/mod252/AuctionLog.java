@@ -0,0 +1,272 @@
+package no.hib.mod252;
+
+import java.io.BufferedWriter;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * This class is the event log shared by all the agents. The agents publish structured events
+ * (see AuctionEvent) instead of printing to the console themselves.
+ *
+ * An event is copied into a pre-allocated slot of a lock-free ring buffer, and a background thread
+ * hands the events to the sinks in batches. Publishing a bid never blocks: if the buffer is full, TRACE events are dropped and counted,
+ * while the rarer events wait for a free slot.
+ * Events below the current level are discarded before anything is copied, so disabled events are free.
+ *
+ * System properties:
+ * "auction.log.level" - TRACE (default), INFO, WARN or OFF, in any case (an unknown level falls back to TRACE, with a warning)
+ * "auction.log.file" - a file to write to instead of the console
+ */
+public final class AuctionLog {
+	private static final int CAPACITY = 1 << 16;
+	private static final int MASK = CAPACITY - 1;
+	private static final long IDLE_NANOS = 1000000L;
+
+	private static AuctionLog instance = null;
+
+	private final AuctionEvent[] slots = new AuctionEvent[CAPACITY];
+	private final AtomicLongArray published = new AtomicLongArray(CAPACITY);
+	private final AtomicLong claimed = new AtomicLong();
+	private final LongAdder dropped = new LongAdder();
+	private final CopyOnWriteArrayList<AuctionEventSink> sinks = new CopyOnWriteArrayList<AuctionEventSink>();
+	private final Thread writer;
+	private volatile long consumed = 0;
+	private volatile long flushed = 0;
+	private volatile int level;
+
+	private AuctionLog() {
+		for (int i = 0; i < CAPACITY; i++) {
+			slots[i] = new AuctionEvent();
+			published.set(i, -1);
+		}
+		String levelName = System.getProperty("auction.log.level", "TRACE");
+		AuctionEvent.Level initialLevel = parseLevel(levelName);
+		level = (initialLevel == null ? AuctionEvent.Level.TRACE : initialLevel).ordinal();
+		sinks.add(new TextEventSink(new BufferedWriter(new OutputStreamWriter(openOutput(), StandardCharsets.UTF_8))));
+
+		writer = new Thread(new Runnable() {
+			public void run() {
+				while (true) {
+					if (drain() == 0) {
+						LockSupport.parkNanos(IDLE_NANOS);
+					}
+				}
+			}
+		}, "auction-log-writer");
+		writer.setDaemon(true);
+		writer.start();
+		if (initialLevel == null) {
+			warning(AuctionLog.class.getSimpleName(), "Unknown level \"" + levelName + "\" in auction.log.level, using TRACE instead.");
+		}
+
+		Runtime.getRuntime().addShutdownHook(new Thread(new Runnable() {
+			public void run() {
+				flush();
+			}
+		}));
+	}
+
+	public static synchronized AuctionLog getInstance() {
+		if (instance == null) {
+			instance = new AuctionLog();
+		}
+		return instance;
+	}
+
+	/**
+	 * Reads the name of a level, regardless of case.
+	 * @param name - the name of the level
+	 * @return - ^, or null if there's no such level
+	 */
+	private static AuctionEvent.Level parseLevel(String name) {
+		try {
+			return AuctionEvent.Level.valueOf(name.trim().toUpperCase(Locale.ROOT));
+		} catch (IllegalArgumentException e) {
+			return null;
+		}
+	}
+
+	public void setLevel(AuctionEvent.Level level) {
+		this.level = level.ordinal();
+	}
+
+	public AuctionEvent.Level getLevel() {
+		return AuctionEvent.Level.values()[level];
+	}
+
+	/**
+	 * Checks whether events of a certain type are logged, which is useful before building a message.
+	 * @param type - the type of event
+	 * @return - ^
+	 */
+	public boolean isEnabled(AuctionEvent.Type type) {
+		return type.getLevel().ordinal() >= level;
+	}
+
+	public void addSink(AuctionEventSink sink) {
+		sinks.add(sink);
+	}
+
+	public void removeSink(AuctionEventSink sink) {
+		sinks.remove(sink);
+	}
+
+	/**
+	 * Returns the amount of events which were dropped because the buffer was full.
+	 * @return - ^
+	 */
+	public long getDropped() {
+		return dropped.sum();
+	}
+
+	/**
+	 * Waits until every event published so far has been written.
+	 */
+	public void flush() {
+		long target = claimed.get();
+		while (flushed < target && writer.isAlive()) {
+			LockSupport.parkNanos(IDLE_NANOS);
+		}
+	}
+
+	public void registered(String agent, String service) {
+		publish(AuctionEvent.Type.REGISTERED, agent, null, 0, 0, 0, service);
+	}
+
+	public void deregistered(String agent) {
+		publish(AuctionEvent.Type.DEREGISTERED, agent, null, 0, 0, 0, null);
+	}
+
+	public void jobIssued(String company, String jobTitle, long amount) {
+		publish(AuctionEvent.Type.JOB_ISSUED, company, null, amount, 0, 0, jobTitle);
+	}
+
+	public void auctionStarted(String company, String conversationId, String jobTitle, long amount, int carriers) {
+		publish(AuctionEvent.Type.AUCTION_STARTED, company, conversationId, amount, 1, carriers, jobTitle);
+	}
+
+	public void bidReceived(String carrier, String conversationId, long amount, int round) {
+		publish(AuctionEvent.Type.BID_RECEIVED, carrier, conversationId, amount, round, 0, null);
+	}
+
+	public void bidRefused(String carrier, String conversationId) {
+		publish(AuctionEvent.Type.BID_REFUSED, carrier, conversationId, 0, 0, 0, null);
+	}
+
+	public void responderFailed(String carrier, String conversationId) {
+		publish(AuctionEvent.Type.RESPONDER_FAILED, carrier, conversationId, 0, 0, 0, null);
+	}
+
+	public void responderRemoved(String carrier, String conversationId) {
+		publish(AuctionEvent.Type.RESPONDER_REMOVED, carrier, conversationId, 0, 0, 0, null);
+	}
+
+	public void roundClosed(String company, String conversationId, int round, long bestAmount, int bidders) {
+		publish(AuctionEvent.Type.ROUND_CLOSED, company, conversationId, bestAmount, round, bidders, null);
+	}
+
+	public void awarded(String company, String conversationId, String winner, long amount, int rounds) {
+		publish(AuctionEvent.Type.AWARDED, company, conversationId, amount, rounds, 0, winner);
+	}
+
+	public void notAwarded(String company, String conversationId, int rounds) {
+		publish(AuctionEvent.Type.NOT_AWARDED, company, conversationId, 0, rounds, 0, null);
+	}
+
+	public void jobAccepted(String carrier, String conversationId, String jobTitle, long amount) {
+		publish(AuctionEvent.Type.JOB_ACCEPTED, carrier, conversationId, amount, 0, 0, jobTitle);
+	}
+
+	public void jobRejected(String carrier, String conversationId) {
+		publish(AuctionEvent.Type.JOB_REJECTED, carrier, conversationId, 0, 0, 0, null);
+	}
+
+	public void message(String agent, String message) {
+		publish(AuctionEvent.Type.MESSAGE, agent, null, 0, 0, 0, message);
+	}
+
+	public void warning(String agent, String message) {
+		publish(AuctionEvent.Type.WARNING, agent, null, 0, 0, 0, message);
+	}
+
+	/**
+	 * Claims the next slot of the ring buffer, copies the values into it and marks it as published.
+	 */
+	private void publish(AuctionEvent.Type type, String source, String conversationId, long amount, int round, int count, String detail) {
+		if (type.getLevel().ordinal() < level) {
+			return;
+		}
+
+		long sequence;
+		while (true) {
+			sequence = claimed.get();
+			if (sequence - consumed >= CAPACITY) {
+				if (type.getLevel() == AuctionEvent.Level.TRACE || !writer.isAlive()) {
+					dropped.increment();
+					return;
+				}
+				LockSupport.parkNanos(IDLE_NANOS);
+			} else if (claimed.compareAndSet(sequence, sequence + 1)) {
+				break;
+			}
+		}
+
+		int index = (int) (sequence & MASK);
+		slots[index].set(type, System.currentTimeMillis(), source, conversationId, amount, round, count, detail);
+		published.set(index, sequence);
+	}
+
+	/**
+	 * Hands every published event to the sinks, and flushes them once.
+	 * @return - the amount of events written
+	 */
+	private int drain() {
+		long next = consumed;
+		int written = 0;
+		while (published.get((int) (next & MASK)) == next) {
+			AuctionEvent event = slots[(int) (next & MASK)];
+			for (AuctionEventSink sink : sinks) {
+				try {
+					sink.write(event);
+				} catch (IOException e) {
+					e.printStackTrace();
+				}
+			}
+			next++;
+			written++;
+			consumed = next;
+		}
+		if (written > 0) {
+			for (AuctionEventSink sink : sinks) {
+				try {
+					sink.flush();
+				} catch (IOException e) {
+					e.printStackTrace();
+				}
+			}
+			flushed = next;
+		}
+		return written;
+	}
+
+	private static OutputStream openOutput() {
+		String file = System.getProperty("auction.log.file");
+		if (file != null) {
+			try {
+				return new FileOutputStream(file, true);
+			} catch (IOException e) {
+				e.printStackTrace();
+			}
+		}
+		return System.out;
+	}
+}
@@ -0,0 +1,227 @@
+package no.hib.mod252;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.management.Attribute;
+import javax.management.AttributeList;
+import javax.management.AttributeNotFoundException;
+import javax.management.DynamicMBean;
+import javax.management.JMException;
+import javax.management.MBeanAttributeInfo;
+import javax.management.MBeanInfo;
+import javax.management.ObjectName;
+
+import jade.core.Agent;
+
+/**
+ * This class keeps the metrics of the auctions in this JVM, and exposes them as the JMX MBean "no.hib.mod252:type=AuctionMetrics"
+ * (e.g. to JConsole or VisualVM). Every metric is read-only, and read when the MBean is asked for it.
+ *
+ * Counters are LongAdders, and histograms are MetricHistograms, so the agents update them without locks,
+ * and without contending with each other. The inbox of every registered agent (see DFHelper) is a gauge of its own.
+ *
+ * The attributes are:
+ * "AuctionsStarted", "AuctionsAwarded", "AuctionsFailed", "BidsReceived", "CfpsShed" (refused by a saturated carrier, see AdmissionControl) - counters
+ * "RoundsPerAuction", "BidLatencyMillis" (from the CFP to a PROPOSE), "DfSearchMicros" (DFHelper.searchDF),
+ * "RoundCloseMicros" (the time spent handling the responses of a round), "CfpReplyLagMillis" (how late a carrier's deferred reply to a CFP is sent, see DeferredCfpHandler)
+ * - histograms, each as ".Count", ".Mean", ".P50", ".P90", ".P99" and ".Max"
+ * "Inbox.<agent>" - the amount of messages in the queue of an agent
+ */
+public final class AuctionMetrics implements DynamicMBean {
+	private static final String OBJECT_NAME = "no.hib.mod252:type=AuctionMetrics";
+	private static final String INBOX = "Inbox.";
+	private static final String[] STATISTICS = {"Count", "Mean", "P50", "P90", "P99", "Max"};
+
+	private final LongAdder auctionsStarted = new LongAdder();
+	private final LongAdder auctionsAwarded = new LongAdder();
+	private final LongAdder auctionsFailed = new LongAdder();
+	private final LongAdder bidsReceived = new LongAdder();
+	private final LongAdder cfpsShed = new LongAdder();
+	private final MetricHistogram roundsPerAuction = new MetricHistogram();
+	private final MetricHistogram bidLatency = new MetricHistogram();
+	private final MetricHistogram dfSearch = new MetricHistogram();
+	private final MetricHistogram roundClose = new MetricHistogram();
+	private final MetricHistogram cfpReplyLag = new MetricHistogram();
+
+	private final Map<String, LongAdder> counters = new LinkedHashMap<String, LongAdder>();
+	private final Map<String, MetricHistogram> histograms = new LinkedHashMap<String, MetricHistogram>();
+
+	private AuctionMetrics() {
+		counters.put("AuctionsStarted", auctionsStarted);
+		counters.put("AuctionsAwarded", auctionsAwarded);
+		counters.put("AuctionsFailed", auctionsFailed);
+		counters.put("BidsReceived", bidsReceived);
+		counters.put("CfpsShed", cfpsShed);
+		histograms.put("RoundsPerAuction", roundsPerAuction);
+		histograms.put("BidLatencyMillis", bidLatency);
+		histograms.put("DfSearchMicros", dfSearch);
+		histograms.put("RoundCloseMicros", roundClose);
+		histograms.put("CfpReplyLagMillis", cfpReplyLag);
+	}
+
+	/**
+	 * Returns the metrics, and registers them with the platform MBean server the first time.
+	 * The instance is created when the Holder class is loaded, so the call takes no lock.
+	 * @return - ^
+	 */
+	public static AuctionMetrics getInstance() {
+		return Holder.INSTANCE;
+	}
+
+	private static AuctionMetrics create() {
+		AuctionMetrics metrics = new AuctionMetrics();
+		try {
+			ManagementFactory.getPlatformMBeanServer().registerMBean(metrics, new ObjectName(OBJECT_NAME));
+		} catch (JMException e) {
+			e.printStackTrace();
+		}
+		return metrics;
+	}
+
+	public void auctionStarted() {
+		auctionsStarted.increment();
+	}
+
+	/**
+	 * An auction ended with a winner.
+	 * @param rounds - the amount of rounds the auction lasted
+	 */
+	public void auctionAwarded(int rounds) {
+		auctionsAwarded.increment();
+		roundsPerAuction.record(rounds);
+	}
+
+	/**
+	 * An auction ended without a winner.
+	 * @param rounds - the amount of rounds the auction lasted
+	 */
+	public void auctionFailed(int rounds) {
+		auctionsFailed.increment();
+		roundsPerAuction.record(rounds);
+	}
+
+	/**
+	 * A saturated carrier refused a CFP without bidding.
+	 */
+	public void cfpShed() {
+		cfpsShed.increment();
+	}
+
+	/**
+	 * A PROPOSE arrived.
+	 * @param latency - the time since the round was opened, in milliseconds
+	 */
+	public void bidReceived(long latency) {
+		bidsReceived.increment();
+		bidLatency.record(latency);
+	}
+
+	/**
+	 * @param nanos - the time a search of the DF took, in nanoseconds
+	 */
+	public void dfSearched(long nanos) {
+		dfSearch.record(nanos / 1000);
+	}
+
+	/**
+	 * @param nanos - the time spent handling the responses of a round, in nanoseconds
+	 */
+	public void roundClosed(long nanos) {
+		roundClose.record(nanos / 1000);
+	}
+
+	/**
+	 * A carrier sent its deferred reply to a CFP (see DeferredCfpHandler).
+	 * @param lag - how long after its wake-up time the reply was sent, in milliseconds
+	 */
+	public void cfpReplyScheduled(long lag) {
+		cfpReplyLag.record(lag);
+	}
+
+	public Object getAttribute(String name) throws AttributeNotFoundException {
+		LongAdder counter = counters.get(name);
+		if (counter != null) {
+			return counter.sum();
+		}
+
+		int separator = name.lastIndexOf('.');
+		if (name.startsWith(INBOX)) {
+			String agentName = name.substring(INBOX.length());
+			for (Agent agent : DFHelper.getInstance().getRegisteredAgents()) {
+				if (agent.getLocalName().equals(agentName)) {
+					return agent.getCurQueueSize();
+				}
+			}
+		} else if (separator > 0 && histograms.containsKey(name.substring(0, separator))) {
+			MetricHistogram histogram = histograms.get(name.substring(0, separator));
+			switch (name.substring(separator + 1)) {
+			case "Count":
+				return histogram.getCount();
+			case "Mean":
+				return histogram.getMean();
+			case "P50":
+				return histogram.getPercentile(0.5);
+			case "P90":
+				return histogram.getPercentile(0.9);
+			case "P99":
+				return histogram.getPercentile(0.99);
+			case "Max":
+				return histogram.getMax();
+			}
+		}
+		throw new AttributeNotFoundException(name);
+	}
+
+	public AttributeList getAttributes(String[] names) {
+		AttributeList attributes = new AttributeList();
+		for (String name : names) {
+			try {
+				attributes.add(new Attribute(name, getAttribute(name)));
+			} catch (AttributeNotFoundException e) {
+				// Agents come and go, so an inbox may be gone by now
+			}
+		}
+		return attributes;
+	}
+
+	public void setAttribute(Attribute attribute) throws AttributeNotFoundException {
+		throw new AttributeNotFoundException(attribute.getName() + " is read-only");
+	}
+
+	public AttributeList setAttributes(AttributeList attributes) {
+		return new AttributeList();
+	}
+
+	public Object invoke(String actionName, Object[] params, String[] signature) {
+		throw new UnsupportedOperationException(actionName);
+	}
+
+	/**
+	 * Lists the attributes, including an inbox for each agent which is registered right now.
+	 */
+	public MBeanInfo getMBeanInfo() {
+		List<MBeanAttributeInfo> attributes = new ArrayList<MBeanAttributeInfo>();
+		for (String name : counters.keySet()) {
+			attributes.add(new MBeanAttributeInfo(name, "long", "Counter", true, false, false));
+		}
+		for (String name : histograms.keySet()) {
+			for (String statistic : STATISTICS) {
+				String type = statistic.equals("Mean") ? "double" : "long";
+				attributes.add(new MBeanAttributeInfo(name + "." + statistic, type, "Histogram", true, false, false));
+			}
+		}
+		for (Agent agent : DFHelper.getInstance().getRegisteredAgents()) {
+			attributes.add(new MBeanAttributeInfo(INBOX + agent.getLocalName(), "int", "Messages in the queue of the agent", true, false, false));
+		}
+		return new MBeanInfo(getClass().getName(), "Metrics of the auctions in this JVM", attributes.toArray(new MBeanAttributeInfo[attributes.size()]), null, null, null);
+	}
+
+	private static final class Holder {
+		private static final AuctionMetrics INSTANCE = create();
+	}
+}
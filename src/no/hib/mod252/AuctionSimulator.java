@@ -0,0 +1,398 @@
+package no.hib.mod252;
+
+import java.util.HashMap;
+import java.util.PriorityQueue;
+import java.util.zip.CRC32;
+
+/**
+ * This class simulates English auctions (CompanyAgent and CarrierAgent) without JADE, on a virtual clock.
+ * Every message and every delay of a carrier is an event in a queue ordered by virtual time, and the simulator jumps
+ * from one event to the next instead of waiting, so thousands of auctions take seconds, however long they'd last in real time.
+ *
+ * The company and the carriers follow the same rules as the agents, using the same classes for them: the carriers' decisions
+ * (CarrierDecision, with a ReservationCache each), the deadlines of the rounds (RoundTimeoutPolicy), closing rounds early (RoundClosePolicy),
+ * and the bid history.
+ * Each carrier draws from a generator of its own, seeded from the seed and the carrier's name (see AgentRandom),
+ * so a run is repeated bit for bit given the same options, and the checksum of the outcomes printed at the end is the same.
+ *
+ * A JADE run started with the same "auction.seed" gives each carrier the same generator, but its threads and message delivery
+ * aren't deterministic, so the agents may draw their numbers in a different order. The simulator replays the auctions as if
+ * every message took exactly the given latency.
+ *
+ * Arguments (Optional), as "key=value":
+ * "carriers" - the amount of carriers (default 10)
+ * "auctions" - the amount of auctions (default 1000)
+ * "rate" - the amount of auctions started per (virtual) second (default 10)
+ * "payment" - the starting payment of each job in whole dollars (default 1000)
+ * "strategy" - the bidding strategy of the carriers (see BiddingStrategy.forName, default undercut)
+ * "percentage" - how low the carriers go, based on the initial payment (default 50)
+ * "latency" - how long a message takes, in milliseconds (default 1)
+ * "seed" - the seed of the carriers' generators (default "auction.seed", or 1)
+ */
+public class AuctionSimulator {
+	private static final int START = 0;
+	private static final int CFP = 1;
+	private static final int DECIDE = 2;
+	private static final int RESPONSE = 3;
+	private static final int DEADLINE = 4;
+	private static final int INFORM = 5;
+
+	private static final int PROPOSED = 1;
+	private static final int REFUSED = 2;
+
+	private final PriorityQueue<Event> events = new PriorityQueue<Event>();
+	private final RoundTimeoutPolicy roundTimeouts = new RoundTimeoutPolicy();
+	private final MetricHistogram durations = new MetricHistogram();
+	private final MetricHistogram rounds = new MetricHistogram();
+	private final CRC32 checksum = new CRC32();
+	private final byte[] outcome = new byte[32];
+	private final Carrier[] carriers;
+	private final BiddingStrategy strategy;
+	private final long latency;
+	private long now = 0;
+	private long sequence = 0;
+	private long messages = 0;
+	private int awarded = 0;
+	private int failed = 0;
+	private long paid = 0;
+
+	/**
+	 * @param carriers - the amount of carriers
+	 * @param strategy - the name of the carriers' bidding strategy
+	 * @param percentage - how low the carriers go, based on the initial payment
+	 * @param latency - how long a message takes, in milliseconds
+	 * @param seed - the seed of the carriers' generators
+	 */
+	public AuctionSimulator(int carriers, String strategy, int percentage, long latency, long seed) {
+		BiddingStrategy chosen = BiddingStrategy.forName(strategy);
+		this.strategy = chosen == null ? new UndercutBid() : chosen;
+		this.carriers = new Carrier[carriers];
+		for (int i = 0; i < carriers; i++) {
+			this.carriers[i] = new Carrier("Carrier" + (i + 1), this.strategy, percentage, seed);
+		}
+		this.latency = latency;
+	}
+
+	public static void main(String[] args) {
+		HashMap<String, String> options = new HashMap<String, String>();
+		for (String arg : args) {
+			int separator = arg.indexOf('=');
+			if (separator > 0) {
+				options.put(arg.substring(0, separator).trim(), arg.substring(separator + 1).trim());
+			}
+		}
+		int carriers = Integer.parseInt(option(options, "carriers", "10"));
+		int auctions = Integer.parseInt(option(options, "auctions", "1000"));
+		double rate = Double.parseDouble(option(options, "rate", "10"));
+		long payment = BidCodec.cents(Long.parseLong(option(options, "payment", "1000")));
+		String strategy = option(options, "strategy", "undercut");
+		int percentage = Integer.parseInt(option(options, "percentage", "50"));
+		long latency = Long.parseLong(option(options, "latency", "1"));
+		long seed = Long.parseLong(option(options, "seed", Long.toString(Long.getLong("auction.seed", 1))));
+
+		AuctionSimulator simulator = new AuctionSimulator(carriers, strategy, percentage, latency, seed);
+		for (int i = 0; i < auctions; i++) {
+			simulator.schedule((long) (i * 1000 / rate), new Auction(i + 1, payment));
+		}
+
+		long start = System.nanoTime();
+		simulator.run();
+		long elapsed = (System.nanoTime() - start) / 1000000;
+		System.out.print(simulator.report(elapsed));
+	}
+
+	private static String option(HashMap<String, String> options, String key, String defaultValue) {
+		String value = options.get(key);
+		return value == null ? defaultValue : value;
+	}
+
+	/**
+	 * Starts an auction at a given (virtual) time.
+	 * @param time - ^ in milliseconds
+	 * @param auction - the auction
+	 */
+	public void schedule(long time, Auction auction) {
+		auction.started = time;
+		auction.closePolicy = new RoundClosePolicy(strategy);
+		add(time, START, auction, 0, 1, 0);
+	}
+
+	/**
+	 * Runs the events in order of time, until none is left.
+	 */
+	public void run() {
+		Event event;
+		while ((event = events.poll()) != null) {
+			now = event.time;
+			switch (event.type) {
+			case START:
+				open(event.auction, event.auction.payment, allCarriers());
+				break;
+			case CFP:
+				decide(event);
+				break;
+			case DECIDE:
+				reply(event);
+				break;
+			case RESPONSE:
+				respond(event);
+				break;
+			case DEADLINE:
+				if (event.round == event.auction.round && event.auction.open) {
+					close(event.auction);
+				}
+				break;
+			case INFORM:
+				finish(event.auction, event.carrier, event.amount);
+				break;
+			}
+		}
+	}
+
+	/**
+	 * Opens a round: a CFP is sent to each participant, and the round ends by its deadline at the latest.
+	 */
+	private void open(Auction auction, long payment, int[] participants) {
+		auction.payment = payment;
+		auction.participants = participants;
+		auction.responses = new int[participants.length];
+		auction.amounts = new long[participants.length];
+		auction.answered = 0;
+		auction.open = true;
+		auction.opened = now;
+		auction.history.openRound(auction.round, payment, now);
+		auction.closePolicy.open(payment);
+		if (auction.round == 1) {
+			auction.remaining = participants.length;
+		}
+		for (int i = 0; i < participants.length; i++) {
+			add(now + latency, CFP, auction, i, auction.round, payment);
+		}
+		add(roundTimeouts.replyBy(now), DEADLINE, auction, 0, auction.round, 0);
+	}
+
+	/**
+	 * A carrier got a CFP, and decides its bid and how long to think before it replies (see CarrierDecision).
+	 */
+	private void decide(Event cfp) {
+		CarrierDecision carrier = carriers[cfp.auction.participants[cfp.carrier]].decision;
+		long bid = carrier.bid(cfp.auction.conversationId, cfp.amount, cfp.round);
+		Event decision = add(now + carrier.think(bid), DECIDE, cfp.auction, cfp.carrier, cfp.round, bid);
+		decision.backup = cfp.amount;
+	}
+
+	/**
+	 * A carrier is done thinking, and replies with a PROPOSE or REFUSE (an amount of 0).
+	 */
+	private void reply(Event decision) {
+		long amount = CarrierDecision.reply(decision.amount, decision.backup, decision.auction.remaining);
+		add(now + latency, RESPONSE, decision.auction, decision.carrier, decision.round, amount);
+	}
+
+	/**
+	 * The company got a PROPOSE or REFUSE. A response to a round which is closed is too late, and its carrier is removed.
+	 */
+	private void respond(Event response) {
+		messages++;
+		Auction auction = response.auction;
+		if (response.round != auction.round || !auction.open) {
+			auction.remaining--;
+			if (response.amount > 0) {
+				messages++;
+			}
+			return;
+		}
+
+		auction.responses[response.carrier] = response.amount > 0 ? PROPOSED : REFUSED;
+		auction.amounts[response.carrier] = response.amount;
+		auction.answered++;
+		if (response.amount > 0) {
+			roundTimeouts.record(now - auction.opened);
+			auction.history.bid(carriers[auction.participants[response.carrier]].name, response.amount, now);
+			if (auction.closePolicy.propose(auction.history)) {
+				close(auction);
+				return;
+			}
+		} else {
+			auction.remaining--;
+		}
+		if (auction.answered == auction.participants.length) {
+			close(auction);
+		}
+	}
+
+	/**
+	 * Closes a round, and opens the next one if more than one carrier proposed (see CompanyAgent.JobAuction.handleAllResponses).
+	 */
+	private void close(Auction auction) {
+		auction.open = false;
+		int proposals = 0;
+		long best = auction.initialPayment;
+		int last = -1;
+		for (int i = 0; i < auction.participants.length; i++) {
+			if (auction.responses[i] == PROPOSED) {
+				proposals++;
+				best = Math.min(best, auction.amounts[i]);
+				last = i;
+			}
+		}
+
+		if (proposals > 1) {
+			int[] next = new int[proposals];
+			int j = 0;
+			for (int i = 0; i < auction.participants.length; i++) {
+				if (auction.responses[i] == PROPOSED) {
+					next[j++] = auction.participants[i];
+				}
+			}
+			auction.round++;
+			open(auction, best, next);
+		} else if (proposals == 1 && best <= auction.history.getPayment()) {
+			messages += 2;
+			add(now + 2 * latency, INFORM, auction, auction.participants[last], auction.round, best);
+		} else {
+			if (proposals == 1) {
+				messages++;
+			}
+			finish(auction, -1, 0);
+		}
+	}
+
+	/**
+	 * An auction is over, either awarded to a carrier (which has confirmed with an INFORM), or not.
+	 */
+	private void finish(Auction auction, int winner, long price) {
+		for (Carrier carrier : carriers) {
+			carrier.reservations.release(auction.conversationId);
+		}
+		if (winner >= 0) {
+			awarded++;
+			paid += price;
+		} else {
+			failed++;
+		}
+		durations.record(now - auction.started);
+		rounds.record(auction.round);
+
+		BidCodec.writeLong(outcome, 0, auction.id);
+		BidCodec.writeInt(outcome, 8, winner);
+		BidCodec.writeLong(outcome, 12, price);
+		BidCodec.writeInt(outcome, 20, auction.round);
+		BidCodec.writeLong(outcome, 24, now);
+		checksum.update(outcome, 0, outcome.length);
+	}
+
+	/**
+	 * Summarizes the run.
+	 * @param elapsed - the real time the run took, in milliseconds
+	 * @return - ^
+	 */
+	public String report(long elapsed) {
+		int auctions = awarded + failed;
+		StringBuilder report = new StringBuilder();
+		report.append("Auctions: ").append(auctions).append(" (").append(awarded).append(" awarded, ").append(failed).append(" not awarded)\n");
+		report.append("Virtual time: ").append(now).append(" ms, real time: ").append(elapsed).append(" ms\n");
+		report.append("Rounds per auction: mean ").append(String.format("%.2f", rounds.getMean())).append(", max ").append(rounds.getMax()).append('\n');
+		report.append("Messages per auction: ").append(auctions == 0 ? 0 : messages / auctions).append('\n');
+		report.append("Mean price: ").append(BidCodec.format(awarded == 0 ? 0 : paid / awarded)).append('\n');
+		report.append("Duration (virtual ms): p50 ").append(durations.getPercentile(0.5)).append(", p90 ").append(durations.getPercentile(0.9))
+				.append(", p99 ").append(durations.getPercentile(0.99)).append(", max ").append(durations.getMax()).append('\n');
+		report.append("Checksum: ").append(Long.toHexString(checksum.getValue())).append('\n');
+		return report.toString();
+	}
+
+	private int[] allCarriers() {
+		int[] all = new int[carriers.length];
+		for (int i = 0; i < all.length; i++) {
+			all[i] = i;
+		}
+		return all;
+	}
+
+	private Event add(long time, int type, Auction auction, int carrier, int round, long amount) {
+		Event event = new Event(time, sequence++, type, auction, carrier, round, amount);
+		if (type == CFP) {
+			messages++;
+		}
+		events.add(event);
+		return event;
+	}
+
+	/**
+	 * A job which is auctioned in the simulation.
+	 */
+	public static final class Auction {
+		private final long id;
+		private final String conversationId;
+		private final long initialPayment;
+		private final BidHistory history = new BidHistory();
+		private RoundClosePolicy closePolicy;
+		private long payment;
+		private long started;
+		private long opened;
+		private int round = 1;
+		private int remaining;
+		private int answered;
+		private boolean open;
+		private int[] participants;
+		private int[] responses;
+		private long[] amounts;
+
+		/**
+		 * @param id - the id of the job
+		 * @param payment - the starting payment of the job, in cents
+		 */
+		public Auction(long id, long payment) {
+			this.id = id;
+			this.conversationId = "Simulator-" + id;
+			this.initialPayment = payment;
+			this.payment = payment;
+		}
+	}
+
+	/**
+	 * A simulated carrier, which bids like a CarrierAgent.
+	 */
+	private static final class Carrier {
+		private final String name;
+		private final ReservationCache reservations;
+		private final CarrierDecision decision;
+
+		private Carrier(String name, BiddingStrategy strategy, int percentage, long seed) {
+			this.name = name;
+			this.reservations = new ReservationCache(percentage);
+			this.decision = new CarrierDecision(strategy, AgentRandom.forAgent(seed, name), reservations);
+		}
+	}
+
+	/**
+	 * Something which happens at a point in virtual time. Events at the same time happen in the order they were added.
+	 */
+	private static final class Event implements Comparable<Event> {
+		private final long time;
+		private final long sequence;
+		private final int type;
+		private final Auction auction;
+		private final int carrier;
+		private final int round;
+		private final long amount;
+		private long backup = 0;
+
+		private Event(long time, long sequence, int type, Auction auction, int carrier, int round, long amount) {
+			this.time = time;
+			this.sequence = sequence;
+			this.type = type;
+			this.auction = auction;
+			this.carrier = carrier;
+			this.round = round;
+			this.amount = amount;
+		}
+
+		public int compareTo(Event other) {
+			if (time != other.time) {
+				return time < other.time ? -1 : 1;
+			}
+			return Long.compare(sequence, other.sequence);
+		}
+	}
+}
@@ -0,0 +1,124 @@
+package no.hib.mod252;
+
+import java.util.SplittableRandom;
+
+import jade.core.Agent;
+import jade.core.behaviours.Behaviour;
+import jade.core.behaviours.CyclicBehaviour;
+import jade.domain.FIPANames;
+import jade.lang.acl.ACLMessage;
+import jade.lang.acl.MessageTemplate;
+import jade.proto.SSContractNetResponder;
+
+/**
+ * This class answers a batch CFP (see BatchCompanyAgent) on behalf of a carrier.
+ * The carrier bids on every job of the batch with its bidding strategy, and replies with a single PROPOSE holding the bid vector,
+ * or a REFUSE if it doesn't bid on any of the jobs. The ACCEPT_PROPOSAL holds the jobs the carrier won.
+ *
+ * A batch is sealed, so the carrier replies right away, without thinking.
+ */
+public class BatchBidResponder extends SSContractNetResponder {
+	private static final long serialVersionUID = 1L;
+
+	/**
+	 * Matches the CFPs of batch auctions.
+	 */
+	public static final MessageTemplate TEMPLATE = MessageTemplate.and(
+			MessageTemplate.MatchProtocol(FIPANames.InteractionProtocol.FIPA_CONTRACT_NET),
+			MessageTemplate.and(MessageTemplate.MatchPerformative(ACLMessage.CFP), MessageTemplate.MatchOntology(BatchCompanyAgent.ONTOLOGY)));
+
+	private final AuctionLog log = AuctionLog.getInstance();
+	private final BiddingStrategy strategy;
+	private final SplittableRandom random;
+	private final int percentage;
+
+	/**
+	 * @param agent - the carrier
+	 * @param cfp - the batch CFP
+	 * @param strategy - the bidding strategy of the carrier
+	 * @param random - the random number generator of the carrier
+	 * @param percentage - how low (in percent of a job's payment) the carrier is willing to go
+	 */
+	public BatchBidResponder(Agent agent, ACLMessage cfp, BiddingStrategy strategy, SplittableRandom random, int percentage) {
+		super(agent, cfp);
+		this.strategy = strategy;
+		this.random = random;
+		this.percentage = percentage;
+	}
+
+	/**
+	 * Creates a behaviour which refuses every batch CFP, for a carrier who doesn't take part in batch auctions.
+	 * Otherwise the batch CFPs would pile up in the message queue of the carrier, as no other behaviour receives them.
+	 * @param agent - the carrier
+	 * @return - ^
+	 */
+	public static Behaviour refuser(Agent agent) {
+		return new CyclicBehaviour(agent) {
+			private static final long serialVersionUID = 1L;
+
+			public void action() {
+				ACLMessage cfp = myAgent.receive(TEMPLATE);
+				if (cfp == null) {
+					block();
+					return;
+				}
+				ACLMessage refuse = cfp.createReply();
+				refuse.setPerformative(ACLMessage.REFUSE);
+				myAgent.send(refuse);
+			}
+		};
+	}
+
+	protected ACLMessage handleCfp(ACLMessage cfp) {
+		byte[] content = cfp.getByteSequenceContent();
+		ACLMessage response = cfp.createReply();
+		response.setPerformative(ACLMessage.REFUSE);
+
+		if (!BidCodec.isBatch(content)) {
+			log.warning(myAgent.getAID().getName(), "couldn't read the batch.");
+			return response;
+		}
+
+		byte[] bids = BidCodec.newBatchReply(content);
+		int round = BidCodec.batchRound(content);
+		int count = BidCodec.batchCount(content);
+		boolean any = false;
+		for (int i = 0; i < count; i++) {
+			long payment = BidCodec.batchAmount(content, i);
+			long bid = strategy.bid(payment, payment * percentage / 100, round, random);
+			if (bid > 0) {
+				BidCodec.setBatchEntry(bids, i, BidCodec.batchJobId(content, i), bid);
+				any = true;
+			}
+		}
+
+		if (any) {
+			response.setPerformative(ACLMessage.PROPOSE);
+			response.setByteSequenceContent(bids);
+		}
+		return response;
+	}
+
+	/**
+	 * The carrier won one or more of the jobs in the batch.
+	 */
+	protected ACLMessage handleAcceptProposal(ACLMessage cfp, ACLMessage propose, ACLMessage accept) {
+		byte[] content = accept.getByteSequenceContent();
+		if (BidCodec.isBatch(content)) {
+			int count = BidCodec.batchCount(content);
+			for (int i = 0; i < count; i++) {
+				long amount = BidCodec.batchAmount(content, i);
+				if (amount > 0) {
+					log.jobAccepted(myAgent.getAID().getName(), accept.getConversationId(), "#" + BidCodec.batchJobId(content, i), amount);
+				}
+			}
+		}
+		ACLMessage inform = accept.createReply();
+		inform.setPerformative(ACLMessage.INFORM);
+		return inform;
+	}
+
+	protected void handleRejectProposal(ACLMessage cfp, ACLMessage propose, ACLMessage reject) {
+		log.jobRejected(myAgent.getAID().getName(), reject.getConversationId());
+	}
+}
@@ -0,0 +1,257 @@
+package no.hib.mod252;
+
+import java.util.Date;
+import java.util.Vector;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+import jade.core.AID;
+import jade.core.behaviours.TickerBehaviour;
+import jade.domain.FIPANames;
+import jade.lang.acl.ACLMessage;
+import jade.proto.ContractNetInitiator;
+
+/**
+ * This class creates a company which auctions its jobs in batches, instead of one auction per job.
+ * The jobs are collected for a while, and then sent to every carrier in a single CFP holding all of them (see BidCodec).
+ * Each carrier answers with a single PROPOSE holding a bid for each job it wants, and every job of the batch goes to its lowest bid
+ * in one pass over the proposals. A winner is paid its own bid (sealed-bid, first-price), and learns which jobs it won from a single ACCEPT_PROPOSAL.
+ * A batch of n jobs thereby costs one DF lookup and about three messages per carrier, rather than n auctions.
+ *
+ * The jobs are given like for CompanyAgent, as arguments or REQUEST messages.
+ *
+ * System properties:
+ * "auction.batch.interval" - how often (in milliseconds) a batch is sent (default 1000)
+ * "auction.batch.size" - the largest amount of jobs in a batch (default 1000)
+ */
+public class BatchCompanyAgent extends CompanyAgent {
+	private static final long serialVersionUID = 1L;
+
+	/**
+	 * The ontology of the messages in a batch auction, which tells the carriers to expect a batch.
+	 */
+	public static final String ONTOLOGY = "job-batch";
+
+	private final ConcurrentLinkedQueue<Job> pending = new ConcurrentLinkedQueue<Job>();
+	private final DFHelper helper = DFHelper.getInstance();
+	private final AuctionLog log = AuctionLog.getInstance();
+	private final AuctionMetrics metrics = AuctionMetrics.getInstance();
+	private final RoundTimeoutPolicy roundTimeouts = new RoundTimeoutPolicy();
+	private final int batchSize = Math.max(1, Integer.getInteger("auction.batch.size", 1000));
+
+	/**
+	 * Registers the agent like a CompanyAgent, and sends the collected jobs as a batch at a fixed interval.
+	 */
+	protected void setup() {
+		super.setup();
+
+		addBehaviour(new TickerBehaviour(this, Long.getLong("auction.batch.interval", 1000)) {
+			private static final long serialVersionUID = 1L;
+
+			protected void onTick() {
+				while (!pending.isEmpty()) {
+					int count = Math.min(batchSize, pending.size());
+					Job[] batch = new Job[count];
+					for (int i = 0; i < count; i++) {
+						batch[i] = pending.poll();
+					}
+					addBehaviour(new BatchAuction(batch));
+				}
+			}
+		});
+	}
+
+	/**
+	 * Adds a new job to the job listings, where it waits for the next batch.
+	 * @param jobTitle - the title of the job
+	 * @param payment - the payment for the job, in cents
+	 * @param request - the REQUEST message the job came from, or null
+	 * @return - the job
+	 */
+	public Job updateJobListings(String jobTitle, long payment, ACLMessage request) {
+		Job job = new Job(helper.newJobId(), jobTitle, payment, helper.newConversationId(this), request);
+		getJobs().put(job.getConversationId(), job);
+		log.jobIssued(getAID().getName(), jobTitle, payment);
+		pending.add(job);
+		return job;
+	}
+
+	/**
+	 * The auction of a batch of jobs, following the FIPA Contract Net Protocol.
+	 */
+	protected class BatchAuction extends ContractNetInitiator {
+		private static final long serialVersionUID = 1L;
+		private final Job[] batch;
+		private final long[] best;
+		private final String[] winners;
+		private String conversationId = null;
+		private long roundOpened = 0;
+
+		public BatchAuction(Job[] batch) {
+			super(BatchCompanyAgent.this, null);
+			this.batch = batch;
+			this.best = new long[batch.length];
+			this.winners = new String[batch.length];
+		}
+
+		/**
+		 * Sends a single CFP, holding every job of the batch, to the agents listed as the type "Carrier".
+		 */
+		public Vector<ACLMessage> prepareCfps(ACLMessage init) {
+			init = new ACLMessage(ACLMessage.CFP);
+			Vector<ACLMessage> messages = new Vector<ACLMessage>();
+
+			AID[] agents = helper.lookup(myAgent, "Carrier");
+
+			for (AID agent : agents) {
+				init.addReceiver(agent);
+			}
+
+			if (agents.length == 0) {
+				log.warning(getAID().getName(), "No agents matching the type \"Carrier\" were found for a batch of " + batch.length + " jobs.");
+				for (Job job : batch) {
+					log.notAwarded(getAID().getName(), job.getConversationId(), 0);
+					finishJob(job, ACLMessage.FAILURE, 0, 0);
+				}
+			} else {
+				conversationId = helper.newConversationId(myAgent);
+				helper.openAuction(conversationId, agents);
+
+				roundOpened = System.currentTimeMillis();
+				Date replyBy = new Date(roundTimeouts.replyBy(roundOpened));
+				byte[] content = BidCodec.newBatch(batch.length, 1, replyBy.getTime());
+				long total = 0;
+				for (int i = 0; i < batch.length; i++) {
+					BidCodec.setBatchEntry(content, i, batch[i].getId(), batch[i].getPayment());
+					total += batch[i].getPayment();
+				}
+
+				init.setConversationId(conversationId);
+				init.setProtocol(FIPANames.InteractionProtocol.FIPA_CONTRACT_NET);
+				init.setOntology(ONTOLOGY);
+				init.setReplyByDate(replyBy);
+				init.setByteSequenceContent(content);
+
+				messages.addElement(init);
+				log.auctionStarted(getAID().getName(), conversationId, "Batch of " + batch.length + " jobs", total, agents.length);
+				metrics.auctionStarted();
+			}
+
+			return messages;
+		}
+
+		protected void handlePropose(ACLMessage propose, Vector v) {
+			long latency = System.currentTimeMillis() - roundOpened;
+			roundTimeouts.record(latency);
+			metrics.bidReceived(latency);
+			log.bidReceived(propose.getSender().getName(), conversationId, 0, 1);
+		}
+
+		protected void handleRefuse(ACLMessage refuse) {
+			log.bidRefused(refuse.getSender().getName(), conversationId);
+			helper.removeReceiverAgent(refuse.getSender(), refuse);
+		}
+
+		protected void handleFailure(ACLMessage failure) {
+			log.responderFailed(failure.getSender().getName(), conversationId);
+			helper.removeReceiverAgent(failure.getSender(), failure);
+		}
+
+		/**
+		 * Clears every job of the batch in a single pass over the proposals, where the lowest bid wins (ties go to the lowest name).
+		 * Each winner gets one ACCEPT_PROPOSAL holding the jobs it won, while everyone else gets a REJECT_PROPOSAL.
+		 */
+		protected void handleAllResponses(Vector responses, Vector acceptances) {
+			if (conversationId == null) {
+				return;
+			}
+			long started = System.nanoTime();
+			int count = batch.length;
+			int size = responses.size();
+			int[] winner = new int[count];
+			for (int j = 0; j < count; j++) {
+				best[j] = batch[j].getPayment();
+				winner[j] = -1;
+				winners[j] = null;
+			}
+
+			for (int i = 0; i < size; i++) {
+				ACLMessage msg = (ACLMessage) responses.get(i);
+				byte[] content = msg.getByteSequenceContent();
+				if (msg.getPerformative() != ACLMessage.PROPOSE || !BidCodec.isBatch(content) || BidCodec.batchCount(content) != count) {
+					continue;
+				}
+				String name = msg.getSender().getName();
+				for (int j = 0; j < count; j++) {
+					long amount = BidCodec.batchAmount(content, j);
+					if (amount > 0 && BidCodec.batchJobId(content, j) == batch[j].getId()
+							&& (amount < best[j] || (amount == best[j] && (winners[j] == null || name.compareTo(winners[j]) < 0)))) {
+						best[j] = amount;
+						winner[j] = i;
+						winners[j] = name;
+					}
+				}
+			}
+
+			byte[][] won = new byte[size][];
+			for (int j = 0; j < count; j++) {
+				int i = winner[j];
+				if (i < 0) {
+					log.notAwarded(getAID().getName(), conversationId, 1);
+					metrics.auctionFailed(1);
+					finishJob(batch[j], ACLMessage.FAILURE, 0, 1);
+					continue;
+				}
+				if (won[i] == null) {
+					won[i] = BidCodec.newBatch(count, 1, 0);
+				}
+				BidCodec.setBatchEntry(won[i], j, batch[j].getId(), best[j]);
+			}
+
+			for (int i = 0; i < size; i++) {
+				ACLMessage msg = (ACLMessage) responses.get(i);
+				if (msg.getPerformative() == ACLMessage.PROPOSE) {
+					ACLMessage reply = msg.createReply();
+					if (won[i] != null) {
+						reply.setPerformative(ACLMessage.ACCEPT_PROPOSAL);
+						reply.setByteSequenceContent(won[i]);
+					} else {
+						reply.setPerformative(ACLMessage.REJECT_PROPOSAL);
+					}
+					acceptances.addElement(reply);
+				}
+			}
+			metrics.roundClosed(System.nanoTime() - started);
+		}
+
+		/**
+		 * A winner confirmed its jobs, so they are removed from the job listings.
+		 */
+		protected void handleInform(ACLMessage inform) {
+			String name = inform.getSender().getName();
+			for (int j = 0; j < batch.length; j++) {
+				if (name.equals(winners[j])) {
+					log.awarded(getAID().getName(), conversationId, name, best[j], 1);
+					metrics.auctionAwarded(1);
+					finishJob(batch[j], ACLMessage.INFORM, best[j], 1);
+				}
+			}
+		}
+
+		/**
+		 * The batch is over. Jobs whose winner never confirmed them are given up, and the participants are released.
+		 */
+		protected void handleAllResultNotifications(Vector notifications) {
+			if (conversationId == null) {
+				return;
+			}
+			for (Job job : batch) {
+				if (getJobs().containsKey(job.getConversationId())) {
+					log.notAwarded(getAID().getName(), conversationId, 1);
+					metrics.auctionFailed(1);
+					finishJob(job, ACLMessage.FAILURE, 0, 1);
+				}
+			}
+			helper.releaseAuction(conversationId);
+		}
+	}
+}
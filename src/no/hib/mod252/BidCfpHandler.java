@@ -0,0 +1,71 @@
+package no.hib.mod252;
+
+import java.util.SplittableRandom;
+
+import jade.core.Agent;
+import jade.lang.acl.ACLMessage;
+import jade.proto.SSContractNetResponder;
+
+/**
+ * This class answers the CFPs of a single auction on behalf of a carrier (see CarrierAgent, VickreyCarrierAgent and CarrierNegotiationAgent).
+ * The bid, and how long the agent thinks before it replies, are decided by the same rules the simulator follows (see CarrierDecision).
+ * If the payment is too low for the agent, it thinks for a while before it declines with a REFUSE message,
+ * otherwise, the agent will respond with a PROPOSE message right away.
+ * A CFP whose price can't be read is refused right away.
+ *
+ * Register it with SSContractNetResponder.registerHandleCfp(), like any DeferredCfpHandler.
+ */
+public class BidCfpHandler extends DeferredCfpHandler {
+	private static final long serialVersionUID = 1L;
+	private final DFHelper helper = DFHelper.getInstance();
+	private final AuctionLog log = AuctionLog.getInstance();
+	private final CarrierDecision decision;
+	private long payment = 0;
+	private long backupPayment = 0;
+
+	/**
+	 * @param agent - the carrier
+	 * @param responder - the responder of the auction
+	 * @param strategy - the bidding strategy of the carrier
+	 * @param random - the random number generator of the carrier
+	 * @param reservations - the reservations of the carrier
+	 */
+	public BidCfpHandler(Agent agent, SSContractNetResponder responder, BiddingStrategy strategy, SplittableRandom random, ReservationCache reservations) {
+		super(agent, responder);
+		this.decision = new CarrierDecision(strategy, random, reservations);
+	}
+
+	/**
+	 * Decides whether to answer the CFP message from the initiator with a PROPOSE/REFUSE message.
+	 */
+	protected long think(ACLMessage cfp) {
+		byte[] content = cfp.getByteSequenceContent();
+		payment = 0;
+		backupPayment = 0;
+		if (!BidCodec.isBid(content)) {
+			log.warning(myAgent.getAID().getName(), "couldn't read the price.");
+			return 0;
+		}
+
+		backupPayment = BidCodec.amount(content);
+		payment = decision.bid(cfp.getConversationId(), backupPayment, BidCodec.round(content));
+		return decision.think(payment);
+	}
+
+	protected ACLMessage reply(ACLMessage cfp) {
+		ACLMessage response = cfp.createReply();
+		long amount = CarrierDecision.reply(payment, backupPayment, helper.getRespondersRemaining(cfp));
+
+		if (amount > 0) {
+			response.setPerformative(ACLMessage.PROPOSE);
+			response.setByteSequenceContent(propose(cfp.getByteSequenceContent(), amount));
+		} else {
+			response.setPerformative(ACLMessage.REFUSE);
+		}
+		return response;
+	}
+
+	private byte[] propose(byte[] cfpContent, long amount) {
+		return BidCodec.encode(BidCodec.jobId(cfpContent), amount, BidCodec.round(cfpContent), BidCodec.deadline(cfpContent));
+	}
+}
@@ -0,0 +1,350 @@
+package no.hib.mod252;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * This class encodes and decodes the content of CFP, PROPOSE and ACCEPT_PROPOSAL messages.
+ * The content is sent as a byte sequence (ACLMessage.setByteSequenceContent) with the following layout:
+ *
+ * [kind (1 byte)][job id (8 bytes)][amount in cents (8 bytes)][round (4 bytes)][deadline (8 bytes)][responders (4 bytes)][job title (UTF-8, optional)]
+ *
+ * A CFP states how many responders are still bidding, since the carriers may run in other containers than the company (see DFHelper.getRespondersRemaining).
+ * A PROPOSE from a broker states how many carriers the broker speaks for (see BrokerAgent), while a carrier leaves the field at 0.
+ *
+ * The fields are read directly from the byte array, so decoding a bid creates neither Strings nor other objects.
+ * Only the job title needs a String, and it's only decoded when it's about to be shown.
+ *
+ * A batch (see BatchCompanyAgent) holds a bid for each of several jobs in a single message:
+ *
+ * [kind (1 byte)][round (4 bytes)][deadline (8 bytes)][count (4 bytes)][job id (8 bytes), amount in cents (8 bytes)] x count
+ *
+ * The entries of a PROPOSE or ACCEPT_PROPOSAL follow the order of the CFP, where an amount of 0 means no bid.
+ *
+ * When a job is delegated to employees (see TaskAllocation), the CFP and the ACCEPT_PROPOSAL list tasks,
+ * while each employee proposes its cost for every task of the CFP, and how many tasks it may take on:
+ *
+ * [kind (1 byte)][count (4 bytes)][task (4 bytes)] x count
+ * [kind (1 byte)][capacity (4 bytes)][count (4 bytes)][cost (8 bytes)] x count
+ */
+public final class BidCodec {
+	public static final byte BID = 1;
+	public static final byte BATCH = 2;
+	public static final byte TASKS = 3;
+	public static final byte COSTS = 4;
+
+	private static final int JOB_ID = 1;
+	private static final int AMOUNT = 9;
+	private static final int ROUND = 17;
+	private static final int DEADLINE = 21;
+	private static final int RESPONDERS = 29;
+	private static final int TITLE = 33;
+	private static final int BATCH_ROUND = 1;
+	private static final int BATCH_DEADLINE = 5;
+	private static final int BATCH_COUNT = 13;
+	private static final int BATCH_ENTRIES = 17;
+	private static final int BATCH_ENTRY = 16;
+	private static final int TASK_COUNT = 1;
+	private static final int TASK_ENTRIES = 5;
+	private static final int COST_CAPACITY = 1;
+	private static final int COST_COUNT = 5;
+	private static final int COST_ENTRIES = 9;
+
+	private BidCodec() {
+	}
+
+	/**
+	 * Encodes a bid without a job title (e.g. a PROPOSE message).
+	 * @param jobId - the id of the job
+	 * @param amount - the amount in cents
+	 * @param round - the round of the auction
+	 * @param deadline - the time (in milliseconds) the bid is valid until, 0 if none
+	 * @return - the content of the message
+	 */
+	public static byte[] encode(long jobId, long amount, int round, long deadline) {
+		return encode(jobId, amount, round, deadline, null);
+	}
+
+	/**
+	 * Encodes a bid.
+	 * @param jobId - the id of the job
+	 * @param amount - the amount in cents
+	 * @param round - the round of the auction
+	 * @param deadline - the time (in milliseconds) the bid is valid until, 0 if none
+	 * @param title - the job title as UTF-8 (see encodeTitle), or null
+	 * @return - the content of the message
+	 */
+	public static byte[] encode(long jobId, long amount, int round, long deadline, byte[] title) {
+		byte[] content = new byte[TITLE + (title == null ? 0 : title.length)];
+		content[0] = BID;
+		writeLong(content, JOB_ID, jobId);
+		writeLong(content, AMOUNT, amount);
+		writeInt(content, ROUND, round);
+		writeLong(content, DEADLINE, deadline);
+		if (title != null) {
+			System.arraycopy(title, 0, content, TITLE, title.length);
+		}
+		return content;
+	}
+
+	/**
+	 * Replaces the amount of an encoded bid, such that the rest of the content doesn't have to be encoded again.
+	 * @param content - the content of a message
+	 * @param amount - the amount in cents
+	 */
+	public static void setAmount(byte[] content, long amount) {
+		writeLong(content, AMOUNT, amount);
+	}
+
+	/**
+	 * Sets how many responders are still bidding in the auction of a CFP.
+	 * @param content - the content of a message
+	 * @param responders - ^
+	 */
+	public static void setResponders(byte[] content, int responders) {
+		writeInt(content, RESPONDERS, responders);
+	}
+
+	/**
+	 * Encodes a job title once, such that it can be attached to any amount of bids.
+	 * @param title - the job title
+	 * @return - ^ as UTF-8
+	 */
+	public static byte[] encodeTitle(String title) {
+		return title.getBytes(StandardCharsets.UTF_8);
+	}
+
+	/**
+	 * Checks whether a message content holds a bid.
+	 * @param content - the byte sequence content of a message (may be null)
+	 * @return - true if the content can be decoded by this class
+	 */
+	public static boolean isBid(byte[] content) {
+		return content != null && content.length >= TITLE && content[0] == BID;
+	}
+
+	public static long jobId(byte[] content) {
+		return readLong(content, JOB_ID);
+	}
+
+	public static long amount(byte[] content) {
+		return readLong(content, AMOUNT);
+	}
+
+	public static int round(byte[] content) {
+		return readInt(content, ROUND);
+	}
+
+	public static long deadline(byte[] content) {
+		return readLong(content, DEADLINE);
+	}
+
+	public static int responders(byte[] content) {
+		return readInt(content, RESPONDERS);
+	}
+
+	/**
+	 * Decodes the job title (allocates a String, so it should only be used for output).
+	 * @param content - the content of a message
+	 * @return - the title, or an empty String if the bid has none
+	 */
+	public static String title(byte[] content) {
+		return new String(content, TITLE, content.length - TITLE, StandardCharsets.UTF_8);
+	}
+
+	/**
+	 * Creates an empty batch, where the entries are filled in with setBatchEntry.
+	 * @param count - the amount of jobs in the batch
+	 * @param round - the round of the auction
+	 * @param deadline - the time (in milliseconds) the bids are valid until, 0 if none
+	 * @return - the content of the message
+	 */
+	public static byte[] newBatch(int count, int round, long deadline) {
+		byte[] content = new byte[BATCH_ENTRIES + count * BATCH_ENTRY];
+		content[0] = BATCH;
+		writeInt(content, BATCH_ROUND, round);
+		writeLong(content, BATCH_DEADLINE, deadline);
+		writeInt(content, BATCH_COUNT, count);
+		return content;
+	}
+
+	/**
+	 * Creates a batch with the same jobs as another batch, but without amounts (e.g. the reply to a batch CFP).
+	 * @param batch - the content of the other message
+	 * @return - the content of the new message
+	 */
+	public static byte[] newBatchReply(byte[] batch) {
+		int count = batchCount(batch);
+		byte[] content = newBatch(count, batchRound(batch), batchDeadline(batch));
+		for (int i = 0; i < count; i++) {
+			writeLong(content, BATCH_ENTRIES + i * BATCH_ENTRY, batchJobId(batch, i));
+		}
+		return content;
+	}
+
+	/**
+	 * Sets an entry of a batch.
+	 * @param content - the content of a message
+	 * @param index - the position of the entry
+	 * @param jobId - the id of the job
+	 * @param amount - the amount in cents, 0 if none
+	 */
+	public static void setBatchEntry(byte[] content, int index, long jobId, long amount) {
+		int offset = BATCH_ENTRIES + index * BATCH_ENTRY;
+		writeLong(content, offset, jobId);
+		writeLong(content, offset + 8, amount);
+	}
+
+	/**
+	 * Checks whether a message content holds a batch.
+	 * @param content - the byte sequence content of a message (may be null)
+	 * @return - true if the content can be decoded as a batch
+	 */
+	public static boolean isBatch(byte[] content) {
+		return content != null && content.length >= BATCH_ENTRIES && content[0] == BATCH
+				&& content.length >= BATCH_ENTRIES + readInt(content, BATCH_COUNT) * BATCH_ENTRY;
+	}
+
+	public static int batchRound(byte[] content) {
+		return readInt(content, BATCH_ROUND);
+	}
+
+	public static long batchDeadline(byte[] content) {
+		return readLong(content, BATCH_DEADLINE);
+	}
+
+	public static int batchCount(byte[] content) {
+		return readInt(content, BATCH_COUNT);
+	}
+
+	public static long batchJobId(byte[] content, int index) {
+		return readLong(content, BATCH_ENTRIES + index * BATCH_ENTRY);
+	}
+
+	public static long batchAmount(byte[] content, int index) {
+		return readLong(content, BATCH_ENTRIES + index * BATCH_ENTRY + 8);
+	}
+
+	/**
+	 * Encodes a list of tasks (e.g. the tasks of a delegated job, or the tasks an employee is given).
+	 * @param tasks - the tasks
+	 * @return - the content of the message
+	 */
+	public static byte[] encodeTasks(int[] tasks) {
+		byte[] content = new byte[TASK_ENTRIES + tasks.length * 4];
+		content[0] = TASKS;
+		writeInt(content, TASK_COUNT, tasks.length);
+		for (int i = 0; i < tasks.length; i++) {
+			writeInt(content, TASK_ENTRIES + i * 4, tasks[i]);
+		}
+		return content;
+	}
+
+	/**
+	 * Checks whether a message content holds a list of tasks.
+	 * @param content - the byte sequence content of a message (may be null)
+	 * @return - true if the content can be decoded as a list of tasks
+	 */
+	public static boolean isTasks(byte[] content) {
+		return content != null && content.length >= TASK_ENTRIES && content[0] == TASKS
+				&& content.length >= TASK_ENTRIES + readInt(content, TASK_COUNT) * 4;
+	}
+
+	public static int taskCount(byte[] content) {
+		return readInt(content, TASK_COUNT);
+	}
+
+	public static int task(byte[] content, int index) {
+		return readInt(content, TASK_ENTRIES + index * 4);
+	}
+
+	/**
+	 * Encodes the costs of an employee, in the order of the tasks of the CFP.
+	 * @param capacity - the largest amount of tasks the employee may take on, 0 for no limit
+	 * @param costs - the cost of each task
+	 * @return - the content of the message
+	 */
+	public static byte[] encodeCosts(int capacity, long[] costs) {
+		byte[] content = new byte[COST_ENTRIES + costs.length * 8];
+		content[0] = COSTS;
+		writeInt(content, COST_CAPACITY, capacity);
+		writeInt(content, COST_COUNT, costs.length);
+		for (int i = 0; i < costs.length; i++) {
+			writeLong(content, COST_ENTRIES + i * 8, costs[i]);
+		}
+		return content;
+	}
+
+	/**
+	 * Checks whether a message content holds the costs of an employee.
+	 * @param content - the byte sequence content of a message (may be null)
+	 * @return - true if the content can be decoded as costs
+	 */
+	public static boolean isCosts(byte[] content) {
+		return content != null && content.length >= COST_ENTRIES && content[0] == COSTS
+				&& content.length >= COST_ENTRIES + readInt(content, COST_COUNT) * 8;
+	}
+
+	public static int costCapacity(byte[] content) {
+		return readInt(content, COST_CAPACITY);
+	}
+
+	public static int costCount(byte[] content) {
+		return readInt(content, COST_COUNT);
+	}
+
+	public static long cost(byte[] content, int index) {
+		return readLong(content, COST_ENTRIES + index * 8);
+	}
+
+	/**
+	 * Converts whole dollars to cents.
+	 * @param dollars - ^
+	 * @return - ^
+	 */
+	public static long cents(long dollars) {
+		return dollars * 100;
+	}
+
+	/**
+	 * Formats an amount for output, e.g. 12000 becomes "120" and 12050 becomes "120.50".
+	 * @param cents - the amount in cents
+	 * @return - ^ in dollars
+	 */
+	public static String format(long cents) {
+		long remainder = Math.abs(cents % 100);
+		if (remainder == 0) {
+			return String.valueOf(cents / 100);
+		}
+		return (cents / 100) + (remainder < 10 ? ".0" : ".") + remainder;
+	}
+
+	static void writeLong(byte[] buffer, int offset, long value) {
+		for (int i = 7; i >= 0; i--) {
+			buffer[offset + i] = (byte) value;
+			value >>>= 8;
+		}
+	}
+
+	static long readLong(byte[] buffer, int offset) {
+		long value = 0;
+		for (int i = 0; i < 8; i++) {
+			value = (value << 8) | (buffer[offset + i] & 0xFF);
+		}
+		return value;
+	}
+
+	static void writeInt(byte[] buffer, int offset, int value) {
+		for (int i = 3; i >= 0; i--) {
+			buffer[offset + i] = (byte) value;
+			value >>>= 8;
+		}
+	}
+
+	static int readInt(byte[] buffer, int offset) {
+		int value = 0;
+		for (int i = 0; i < 4; i++) {
+			value = (value << 8) | (buffer[offset + i] & 0xFF);
+		}
+		return value;
+	}
+}
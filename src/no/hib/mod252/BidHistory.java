@@ -0,0 +1,212 @@
+package no.hib.mod252;
+
+import java.util.Arrays;
+import java.util.HashMap;
+
+/**
+ * This class keeps every bid of a single auction, round by round, in primitive arrays.
+ * A bid is stored as its round, the index of its bidder, its amount and its time (20 bytes in all), so an auction of hundreds of rounds
+ * takes a fraction of the memory of boxed lists. The name of a bidder is stored once, and its bids refer to it by index.
+ *
+ * The current round, its payment and its best bid, the best bid of the whole auction, and the last bid of each bidder
+ * are kept up to date as the bids arrive, hence they are read in constant time. The amount of bids and the duration of each round
+ * give the bid rate of the auction over time.
+ *
+ * An instance belongs to a single auction, and is used by the agent which runs it only, so it's not thread safe.
+ */
+public final class BidHistory {
+	private static final int INITIAL_CAPACITY = 16;
+
+	private final HashMap<String, Integer> bidderIndex = new HashMap<String, Integer>();
+	private String[] bidders = new String[INITIAL_CAPACITY];
+	private long[] lastBids = new long[INITIAL_CAPACITY];
+
+	private int[] bidRounds = new int[INITIAL_CAPACITY];
+	private int[] bidBidders = new int[INITIAL_CAPACITY];
+	private long[] bidAmounts = new long[INITIAL_CAPACITY];
+	private int[] bidTimes = new int[INITIAL_CAPACITY];
+	private int size = 0;
+
+	private long[] roundPayments = new long[INITIAL_CAPACITY];
+	private long[] roundBests = new long[INITIAL_CAPACITY];
+	private int[] roundBids = new int[INITIAL_CAPACITY];
+	private int[] roundOpened = new int[INITIAL_CAPACITY];
+	private int firstRound = 0;
+	private int rounds = 0;
+
+	private long started = 0;
+	private long best = Long.MAX_VALUE;
+
+	/**
+	 * Opens a round, which the following bids belong to. The first round opened is the first round of the history
+	 * (above 1 if the auction is resumed), and every round after it follows the previous one.
+	 * @param round - the number of the round
+	 * @param payment - the payment of the round in cents, i.e. the price to beat
+	 * @param now - the time in milliseconds
+	 */
+	public void openRound(int round, long payment, long now) {
+		if (rounds == 0) {
+			firstRound = round;
+			started = now;
+		} else if (round != firstRound + rounds) {
+			throw new IllegalArgumentException("Round " + round + " doesn't follow round " + getRound());
+		}
+		if (rounds == roundPayments.length) {
+			int capacity = rounds * 2;
+			roundPayments = Arrays.copyOf(roundPayments, capacity);
+			roundBests = Arrays.copyOf(roundBests, capacity);
+			roundBids = Arrays.copyOf(roundBids, capacity);
+			roundOpened = Arrays.copyOf(roundOpened, capacity);
+		}
+		roundPayments[rounds] = payment;
+		roundBests[rounds] = payment;
+		roundBids[rounds] = 0;
+		roundOpened[rounds] = (int) (now - started);
+		rounds++;
+	}
+
+	/**
+	 * Records a bid of the current round.
+	 * @param bidder - the name of the bidder
+	 * @param amount - the bid in cents
+	 * @param now - the time in milliseconds
+	 */
+	public void bid(String bidder, long amount, long now) {
+		if (rounds == 0) {
+			throw new IllegalStateException("No round is open");
+		}
+		Integer index = bidderIndex.get(bidder);
+		if (index == null) {
+			index = bidderIndex.size();
+			bidderIndex.put(bidder, index);
+			if (index == bidders.length) {
+				bidders = Arrays.copyOf(bidders, index * 2);
+				lastBids = Arrays.copyOf(lastBids, index * 2);
+			}
+			bidders[index] = bidder;
+		}
+
+		if (size == bidAmounts.length) {
+			int capacity = size * 2;
+			bidRounds = Arrays.copyOf(bidRounds, capacity);
+			bidBidders = Arrays.copyOf(bidBidders, capacity);
+			bidAmounts = Arrays.copyOf(bidAmounts, capacity);
+			bidTimes = Arrays.copyOf(bidTimes, capacity);
+		}
+		bidRounds[size] = getRound();
+		bidBidders[size] = index;
+		bidAmounts[size] = amount;
+		bidTimes[size] = (int) (now - started);
+		size++;
+
+		lastBids[index] = amount;
+		int current = rounds - 1;
+		roundBids[current]++;
+		roundBests[current] = Math.min(roundBests[current], amount);
+		best = Math.min(best, amount);
+	}
+
+	/**
+	 * Returns the current round.
+	 * @return - ^ (0 if no round has been opened)
+	 */
+	public int getRound() {
+		return rounds == 0 ? 0 : firstRound + rounds - 1;
+	}
+
+	/**
+	 * Returns the payment of the current round, i.e. the best bid of the round before it.
+	 * @return - ^ in cents
+	 */
+	public long getPayment() {
+		return roundPayments[rounds - 1];
+	}
+
+	/**
+	 * Returns the best bid of the current round.
+	 * @return - ^ in cents (the payment of the round if there are no bids yet)
+	 */
+	public long getRoundBest() {
+		return roundBests[rounds - 1];
+	}
+
+	/**
+	 * Returns the amount of bids in the current round.
+	 * @return - ^
+	 */
+	public int getRoundBids() {
+		return roundBids[rounds - 1];
+	}
+
+	/**
+	 * Returns the best bid of the whole auction.
+	 * @return - ^ in cents (0 if there are no bids)
+	 */
+	public long getBest() {
+		return size == 0 ? 0 : best;
+	}
+
+	/**
+	 * Returns the last bid of a bidder, in any round.
+	 * @param bidder - the name of the bidder
+	 * @return - ^ in cents (0 if the bidder hasn't bid)
+	 */
+	public long getLastBid(String bidder) {
+		Integer index = bidderIndex.get(bidder);
+		return index == null ? 0 : lastBids[index];
+	}
+
+	/**
+	 * Returns the amount of bids in a round.
+	 * @param round - the number of the round
+	 * @return - ^ (0 if the round isn't in the history)
+	 */
+	public int getBidCount(int round) {
+		int i = round - firstRound;
+		return i < 0 || i >= rounds ? 0 : roundBids[i];
+	}
+
+	/**
+	 * Returns the rate at which the bids of a round arrived, i.e. its bids divided by how long it was open.
+	 * The current round is measured until its last bid.
+	 * @param round - the number of the round
+	 * @return - ^ in bids per second (0 if the round isn't in the history)
+	 */
+	public double getBidRate(int round) {
+		int i = round - firstRound;
+		if (i < 0 || i >= rounds || roundBids[i] == 0) {
+			return 0;
+		}
+		int closed = i + 1 < rounds ? roundOpened[i + 1] : bidTimes[size - 1];
+		return roundBids[i] * 1000.0 / Math.max(1, closed - roundOpened[i]);
+	}
+
+	/**
+	 * Returns the amount of bids in the history.
+	 * @return - ^
+	 */
+	public int size() {
+		return size;
+	}
+
+	public int getBidRound(int i) {
+		return bidRounds[i];
+	}
+
+	public String getBidder(int i) {
+		return bidders[bidBidders[i]];
+	}
+
+	public long getBidAmount(int i) {
+		return bidAmounts[i];
+	}
+
+	/**
+	 * Returns when a bid arrived.
+	 * @param i - the index of the bid
+	 * @return - ^ in milliseconds since the first round was opened
+	 */
+	public int getBidTime(int i) {
+		return bidTimes[i];
+	}
+}
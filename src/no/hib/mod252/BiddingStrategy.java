@@ -0,0 +1,61 @@
+package no.hib.mod252;
+
+import java.util.Locale;
+import java.util.SplittableRandom;
+
+/**
+ * A strategy which decides the bids of a carrier. A carrier picks its strategy by name (see forName) from its arguments.
+ *
+ * Every CFP the carrier receives is answered with a call to bid, which should neither block nor allocate,
+ * since it's called once per carrier, per round, per auction.
+ * The random number generator belongs to the carrier, and is only used by the carrier's own behaviours.
+ */
+public interface BiddingStrategy {
+
+	/**
+	 * Decides the bid for a CFP.
+	 * @param payment - the current payment in cents
+	 * @param floor - the carrier only bids above this amount (in cents), i.e. its reservation price
+	 * @param round - the round of the auction
+	 * @param random - the random number generator of the carrier
+	 * @return - the bid in cents, or 0 if the carrier forfeits
+	 */
+	long bid(long payment, long floor, int round, SplittableRandom random);
+
+	/**
+	 * Returns the largest amount a bid undercuts the payment by, which tells when a proposal can't be beaten (see RoundClosePolicy).
+	 * @param payment - the current payment in cents
+	 * @return - ^ in cents, or 0 if a bid may undercut the payment by any amount
+	 */
+	default long maxUndercut(long payment) {
+		return 0;
+	}
+
+	/**
+	 * Creates a strategy from its name:
+	 * "undercut" - undercuts the payment by a random amount (see UndercutBid)
+	 * "fixed-step" or "fixed-step:Dollars" - undercuts the payment by the same amount every time (see FixedStepBid)
+	 * "reservation" - stays in the auction until the payment reaches the reservation price (see ReservationPriceBid)
+	 * "truthful" - bids the reservation price right away, which is the best strategy in a Vickrey auction (see TruthfulBid)
+	 * @param name - the name of the strategy
+	 * @return - the strategy, or null if the name is unknown
+	 */
+	static BiddingStrategy forName(String name) {
+		String[] parts = name.trim().toLowerCase(Locale.ROOT).split(":");
+		switch (parts[0]) {
+		case "undercut":
+			return new UndercutBid();
+		case "fixed-step":
+			if (parts.length > 1 && parts[1].matches("^\\d+$")) {
+				return new FixedStepBid(BidCodec.cents(Long.parseLong(parts[1])));
+			}
+			return new FixedStepBid(FixedStepBid.DEFAULT_STEP);
+		case "reservation":
+			return new ReservationPriceBid();
+		case "truthful":
+			return new TruthfulBid();
+		default:
+			return null;
+		}
+	}
+}
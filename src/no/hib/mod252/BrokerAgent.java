@@ -0,0 +1,384 @@
+package no.hib.mod252;
+
+import java.util.ArrayList;
+import java.util.Date;
+
+import jade.core.AID;
+import jade.core.Agent;
+import jade.core.behaviours.Behaviour;
+import jade.core.behaviours.SimpleBehaviour;
+import jade.domain.FIPANames;
+import jade.domain.FIPAAgentManagement.ServiceDescription;
+import jade.lang.acl.ACLMessage;
+import jade.lang.acl.MessageTemplate;
+import jade.proto.SSContractNetResponder;
+import jade.proto.SSIteratedContractNetResponder;
+import jade.proto.SSResponderDispatcher;
+
+/**
+ * This class creates an agent who stands between the companies and the carriers of its shard.
+ * Towards a company it acts as a responder, and towards its carriers as an initiator:
+ * each round of the company is run as a sub-round among the broker's carriers, and only the best proposal of the sub-round is sent on,
+ * so a company only hears from its brokers instead of every carrier (see the "auction.responders" property of CompanyAgent).
+ *
+ * The proposal of a broker states how many of its carriers are still bidding (see BidCodec.responders),
+ * so the company keeps the auction going until a single carrier is left, just as if it talked to the carriers itself.
+ * Once the company accepts, the broker accepts the carrier who made the best proposal, rejects the others, and passes on the carrier's answer.
+ *
+ * The sub-round closes a little ahead of the company's deadline, such that the proposal reaches the company in time.
+ *
+ * Arguments (Optional): "Index (Integer), Brokers (Integer)"
+ * When there are several brokers in a shard, each of them takes a slice of the carriers: the ones who rank its index highest
+ * by rendezvous hashing (see ShardPartitioner), so changing the amount of brokers only moves the carriers of the brokers added or removed.
+ * By default, a broker takes every carrier of its shard.
+ *
+ * The proposal of a broker is valid until a round's time after the company's deadline. Should the company drop the broker meanwhile
+ * (with neither a new CFP, an ACCEPT_PROPOSAL nor a REJECT_PROPOSAL), the conversation ends, and the broker rejects its carriers' proposals.
+ *
+ * System properties:
+ * "auction.broker.margin" - how long (in milliseconds) before the company's deadline a sub-round closes (default 100)
+ */
+public class BrokerAgent extends Agent {
+	private static final long serialVersionUID = 1L;
+	private DFHelper helper;
+	private AuctionLog log;
+	private RoundTimeoutPolicy roundTimeouts;
+	private final long margin = Long.getLong("auction.broker.margin", 100);
+	private final ShardPartitioner partitioner = new ShardPartitioner(1);
+	private String[] slices = {"0"};
+	private int index = 0;
+
+	/**
+	 * Registers the agent with the Directory Facilitator as a Broker,
+	 * and prepares the agent for an incoming message.
+	 */
+	protected void setup() {
+		helper = DFHelper.getInstance();
+		log = AuctionLog.getInstance();
+		roundTimeouts = new RoundTimeoutPolicy();
+		ServiceDescription serviceDescription = new ServiceDescription();
+		serviceDescription.setType("Broker");
+		serviceDescription.setName(getLocalName());
+		helper.register(this, serviceDescription);
+
+		Object[] args = getArguments();
+		if (args != null && args.length > 1 && ((String) args[0]).matches("^\\d+$") && ((String) args[1]).matches("^\\d+$")) {
+			int brokers = Math.max(1, Integer.parseInt((String) args[1]));
+			index = Integer.parseInt((String) args[0]) % brokers;
+			slices = new String[brokers];
+			for (int i = 0; i < brokers; i++) {
+				slices[i] = String.valueOf(i);
+			}
+		}
+
+		MessageTemplate template = MessageTemplate.and(MessageTemplate.MatchProtocol(FIPANames.InteractionProtocol.FIPA_ITERATED_CONTRACT_NET),
+				MessageTemplate.MatchPerformative(ACLMessage.CFP));
+		addBehaviour(new BrokerContractNetResponder(this, template));
+	}
+
+	/**
+	 * De-registers the agent, unless it has been de-registered already.
+	 */
+	protected void takeDown() {
+		helper.deregister(this);
+	}
+
+	/**
+	 * Returns the carriers of the broker's slice of its shard.
+	 * @return - ^
+	 */
+	private ArrayList<AID> carriers() {
+		ArrayList<AID> carriers = new ArrayList<AID>();
+		for (AID carrier : helper.lookup(this, "Carrier", ShardPartitioner.localShard())) {
+			if (slices.length == 1 || partitioner.select(carrier.getName(), slices)[0] == index) {
+				carriers.add(carrier);
+			}
+		}
+		return carriers;
+	}
+
+	private class BrokerContractNetResponder extends SSResponderDispatcher {
+		private static final long serialVersionUID = 1L;
+
+		private BrokerContractNetResponder(Agent agent, MessageTemplate template) {
+			super(agent, template);
+		}
+
+		protected Behaviour createResponder(ACLMessage message) {
+			final SubAuction auction = new SubAuction(message.getConversationId() + "-" + getLocalName());
+			SSIteratedContractNetResponder responder = new SSIteratedContractNetResponder(myAgent, message) {
+				private static final long serialVersionUID = 1L;
+
+				/**
+				 * The company went with another broker, so neither of the broker's carriers got the job.
+				 */
+				protected void handleRejectProposal(ACLMessage msg, ACLMessage propose, ACLMessage reject) {
+					auction.reject(null);
+					log.jobRejected(getAID().getName(), reject.getConversationId());
+				}
+
+				/**
+				 * The conversation is over, however it ended, so the carriers who are still waiting for an answer are rejected.
+				 */
+				public int onEnd() {
+					auction.reject(null);
+					return super.onEnd();
+				}
+			};
+			responder.registerHandleCfp(new SubRoundHandler(myAgent, responder, auction));
+			responder.registerHandleAcceptProposal(new AcceptHandler(myAgent, responder, auction));
+			return responder;
+		}
+	}
+
+	/**
+	 * The carriers of a single auction, as they stand after the latest sub-round.
+	 */
+	private class SubAuction {
+		private final String conversationId;
+		private final MessageTemplate template;
+		private ArrayList<AID> bidders = null;
+		private ArrayList<ACLMessage> proposals = new ArrayList<ACLMessage>();
+		private ACLMessage best = null;
+
+		private SubAuction(String conversationId) {
+			this.conversationId = conversationId;
+			this.template = MessageTemplate.MatchConversationId(conversationId);
+		}
+
+		/**
+		 * Rejects the proposals of the latest sub-round, except for the winner.
+		 * @param winner - the proposal which was accepted, or null
+		 */
+		private void reject(ACLMessage winner) {
+			for (ACLMessage proposal : proposals) {
+				if (proposal != winner) {
+					ACLMessage reject = proposal.createReply();
+					reject.setPerformative(ACLMessage.REJECT_PROPOSAL);
+					send(reject);
+				}
+			}
+			proposals.clear();
+		}
+
+		/**
+		 * Rejects a proposal which arrived after its sub-round was closed, such that the carrier stops waiting for an answer.
+		 * @param late - the late response
+		 */
+		private void late(ACLMessage late) {
+			if (late.getPerformative() == ACLMessage.PROPOSE) {
+				ACLMessage reject = late.createReply();
+				reject.setPerformative(ACLMessage.REJECT_PROPOSAL);
+				send(reject);
+			}
+		}
+	}
+
+	/**
+	 * Handles a CFP from the company on behalf of the responder, by running a sub-round among the carriers who are still bidding.
+	 * Only this behaviour waits for the carriers, so the agent is free to serve other auctions meanwhile.
+	 */
+	private class SubRoundHandler extends SimpleBehaviour {
+		private static final long serialVersionUID = 1L;
+		private final SSContractNetResponder responder;
+		private final SubAuction auction;
+		private final ArrayList<ACLMessage> proposals = new ArrayList<ACLMessage>();
+		private ACLMessage cfp = null;
+		private String replyWith = null;
+		private long opened = 0;
+		private long deadline = 0;
+		private int waiting = 0;
+		private boolean finished = false;
+
+		private SubRoundHandler(Agent agent, SSContractNetResponder responder, SubAuction auction) {
+			super(agent);
+			this.responder = responder;
+			this.auction = auction;
+		}
+
+		public void action() {
+			if (cfp == null) {
+				cfp = (ACLMessage) getDataStore().get(responder.CFP_KEY);
+				if (!open()) {
+					close();
+					return;
+				}
+			}
+
+			ACLMessage msg = myAgent.receive(auction.template);
+			while (msg != null) {
+				if (replyWith.equals(msg.getInReplyTo())) {
+					waiting--;
+					if (msg.getPerformative() == ACLMessage.PROPOSE && BidCodec.isBid(msg.getByteSequenceContent())) {
+						roundTimeouts.record(System.currentTimeMillis() - opened);
+						proposals.add(msg);
+					}
+				} else {
+					auction.late(msg);
+				}
+				msg = myAgent.receive(auction.template);
+			}
+
+			long blockTime = deadline - System.currentTimeMillis();
+			if (waiting > 0 && blockTime > 0) {
+				block(blockTime);
+			} else {
+				close();
+			}
+		}
+
+		public boolean done() {
+			return finished;
+		}
+
+		/**
+		 * Prepares the handler for the next CFP of the conversation (iterated contract net).
+		 */
+		public int onEnd() {
+			reset();
+			return super.onEnd();
+		}
+
+		public void reset() {
+			super.reset();
+			proposals.clear();
+			cfp = null;
+			finished = false;
+		}
+
+		/**
+		 * Sends the CFP of the company on to the carriers who are still bidding, due a little ahead of the company's deadline.
+		 * @return - false if there's nobody to send it to
+		 */
+		private boolean open() {
+			byte[] content = cfp.getByteSequenceContent();
+			if (!BidCodec.isBid(content)) {
+				log.warning(getAID().getName(), "couldn't read the price.");
+				return false;
+			}
+			if (auction.bidders == null) {
+				auction.bidders = carriers();
+			}
+			if (auction.bidders.isEmpty()) {
+				return false;
+			}
+
+			opened = System.currentTimeMillis();
+			long companyDeadline = BidCodec.deadline(content);
+			deadline = companyDeadline > 0 ? Math.max(opened, companyDeadline - margin) : roundTimeouts.replyBy(opened);
+			waiting = auction.bidders.size();
+			replyWith = auction.conversationId + "-" + BidCodec.round(content);
+
+			// The carriers count the other brokers as a single bidder each
+			byte[] subContent = content.clone();
+			BidCodec.setResponders(subContent, waiting + Math.max(0, helper.getRespondersRemaining(cfp) - 1));
+			ACLMessage subCfp = new ACLMessage(ACLMessage.CFP);
+			subCfp.setProtocol(FIPANames.InteractionProtocol.FIPA_ITERATED_CONTRACT_NET);
+			subCfp.setConversationId(auction.conversationId);
+			subCfp.setReplyWith(replyWith);
+			subCfp.setReplyByDate(new Date(deadline));
+			subCfp.setByteSequenceContent(subContent);
+			for (AID bidder : auction.bidders) {
+				subCfp.addReceiver(bidder);
+			}
+			send(subCfp);
+			return true;
+		}
+
+		/**
+		 * Closes the sub-round, and answers the company with the best proposal, stating how many carriers are still bidding.
+		 * The carriers who didn't propose are out of the auction.
+		 */
+		private void close() {
+			ACLMessage best = null;
+			ArrayList<AID> bidders = new ArrayList<AID>(proposals.size());
+			for (ACLMessage proposal : proposals) {
+				bidders.add(proposal.getSender());
+				if (best == null || BidCodec.amount(proposal.getByteSequenceContent()) < BidCodec.amount(best.getByteSequenceContent())) {
+					best = proposal;
+				}
+			}
+			auction.bidders = bidders;
+			auction.proposals = new ArrayList<ACLMessage>(proposals);
+			auction.best = best;
+
+			ACLMessage reply = cfp.createReply();
+			if (best != null) {
+				byte[] content = cfp.getByteSequenceContent();
+				byte[] bestContent = best.getByteSequenceContent();
+				long amount = BidCodec.amount(bestContent);
+				log.roundClosed(getAID().getName(), auction.conversationId, BidCodec.round(content), amount, proposals.size());
+				byte[] proposal = BidCodec.encode(BidCodec.jobId(content), amount, BidCodec.round(content), BidCodec.deadline(bestContent));
+				BidCodec.setResponders(proposal, proposals.size());
+				reply.setPerformative(ACLMessage.PROPOSE);
+				reply.setByteSequenceContent(proposal);
+				long companyDeadline = BidCodec.deadline(content);
+				reply.setReplyByDate(new Date(Math.max(companyDeadline, System.currentTimeMillis()) + roundTimeouts.getTimeout()));
+			} else {
+				reply.setPerformative(ACLMessage.REFUSE);
+			}
+			getDataStore().put(responder.REPLY_KEY, reply);
+			finished = true;
+		}
+	}
+
+	/**
+	 * Handles an ACCEPT_PROPOSAL from the company on behalf of the responder: the carrier with the best proposal is accepted,
+	 * and its INFORM (or FAILURE) is passed on to the company.
+	 */
+	private class AcceptHandler extends SimpleBehaviour {
+		private static final long serialVersionUID = 1L;
+		private final SSContractNetResponder responder;
+		private final SubAuction auction;
+		private ACLMessage accept = null;
+		private MessageTemplate template = null;
+		private long deadline = 0;
+		private boolean finished = false;
+
+		private AcceptHandler(Agent agent, SSContractNetResponder responder, SubAuction auction) {
+			super(agent);
+			this.responder = responder;
+			this.auction = auction;
+		}
+
+		public void action() {
+			if (accept == null) {
+				accept = (ACLMessage) getDataStore().get(responder.ACCEPT_PROPOSAL_KEY);
+				if (auction.best == null) {
+					answer(ACLMessage.FAILURE);
+					return;
+				}
+				ACLMessage winner = auction.best.createReply();
+				winner.setPerformative(ACLMessage.ACCEPT_PROPOSAL);
+				winner.setByteSequenceContent(accept.getByteSequenceContent());
+				send(winner);
+				auction.reject(auction.best);
+				template = MessageTemplate.and(auction.template, MessageTemplate.and(MessageTemplate.MatchSender(auction.best.getSender()),
+						MessageTemplate.or(MessageTemplate.MatchPerformative(ACLMessage.INFORM), MessageTemplate.MatchPerformative(ACLMessage.FAILURE))));
+				deadline = System.currentTimeMillis() + roundTimeouts.getTimeout();
+			}
+
+			ACLMessage answer = myAgent.receive(template);
+			long blockTime = deadline - System.currentTimeMillis();
+			if (answer != null) {
+				answer(answer.getPerformative());
+			} else if (blockTime > 0) {
+				block(blockTime);
+			} else {
+				log.warning(getAID().getName(), auction.best.getSender().getName() + " didn't confirm the job in time.");
+				answer(ACLMessage.FAILURE);
+			}
+		}
+
+		public boolean done() {
+			return finished;
+		}
+
+		private void answer(int performative) {
+			ACLMessage reply = accept.createReply();
+			reply.setPerformative(performative);
+			getDataStore().put(responder.REPLY_KEY, reply);
+			finished = true;
+		}
+	}
+}
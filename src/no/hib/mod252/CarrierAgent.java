@@ -1,6 +1,6 @@
 package no.hib.mod252;
 
-import java.util.Random;
+import java.util.SplittableRandom;
 
 import jade.core.Agent;
 import jade.core.behaviours.Behaviour;
@@ -19,15 +19,22 @@ import jade.proto.SSResponderDispatcher;
  * The agent tries to get the highest possible value for doing a job, 
  * but when there are other responders, they'll underbid each other, in hope for other responders to forfeit.
  * 
- * Arguments (Optional): "Percentage (Integer)"
- * The argument defines how low the agent is willing to go based on the initial payment.
+ * The agent takes part in at most "carrier.capacity" auctions at the same time, and refuses the rest right away (see AdmissionControl).
+ * 
+ * Arguments (Optional): "Percentage (Integer), Strategy (String)"
+ * The first argument defines how low the agent is willing to go based on the initial payment of each job (see ReservationCache).
  * If no argument is specified (or the format is invalid) it will use its default value: 50.
+ * The second argument names the bidding strategy (see BiddingStrategy.forName), which is "undercut" by default.
  */
 public class CarrierAgent extends Agent {
 	private static final long serialVersionUID = 1L;
 	private DFHelper helper;
-	private int initialPayment = 0;
+	private AuctionLog log;
+	private ReservationCache reservations;
+	private AdmissionControl admission;
 	private int percentage = 50;
+	private BiddingStrategy strategy = new UndercutBid();
+	private SplittableRandom random;
 
 	/**
 	 * Registers the agent with the Directory Facilitator as a Carrier, 
@@ -35,6 +42,8 @@ public class CarrierAgent extends Agent {
 	 */
 	protected void setup() {
 		helper = DFHelper.getInstance();
+		random = AgentRandom.forAgent(getLocalName());
+		log = AuctionLog.getInstance();
 		ServiceDescription serviceDescription = new ServiceDescription();
 		serviceDescription.setType("Carrier");
 		serviceDescription.setName(getLocalName());
@@ -47,6 +56,17 @@ public class CarrierAgent extends Agent {
 				percentage = Integer.parseInt(percentageArg);
 			}
 		}
+		if (args != null && args.length > 1) {
+			BiddingStrategy chosen = BiddingStrategy.forName((String) args[1]);
+			if (chosen != null) {
+				strategy = chosen;
+			} else {
+				log.warning(getAID().getName(), "Unknown strategy \"" + args[1] + "\", using \"undercut\" instead.");
+			}
+		}
+
+		reservations = new ReservationCache(percentage);
+		admission = new AdmissionControl(this);
 
 		final String IP = FIPANames.InteractionProtocol.FIPA_ITERATED_CONTRACT_NET;
 		MessageTemplate template = MessageTemplate.and(MessageTemplate.MatchProtocol(IP),
@@ -57,105 +77,72 @@ public class CarrierAgent extends Agent {
 		ParallelBehaviour parallel = new ParallelBehaviour(ParallelBehaviour.WHEN_ALL);
 		sequential.addSubBehaviour(parallel);
 		parallel.addSubBehaviour(new CustomContractNetResponder(this, template));
+		parallel.addSubBehaviour(new BatchContractNetResponder(this));
 	}
 
-	private class CustomContractNetResponder extends SSResponderDispatcher {
+	/**
+	 * De-registers the agent, unless it has been de-registered already.
+	 */
+	protected void takeDown() {
+		helper.deregister(this);
+	}
+
+	/**
+	 * Answers the batch auctions of a BatchCompanyAgent, using the same bidding strategy as the single auctions.
+	 * A batch takes a place of the carrier like a single auction does (see AdmissionControl), until its conversation ends.
+	 */
+	private class BatchContractNetResponder extends SSResponderDispatcher {
 		private static final long serialVersionUID = 1L;
 
-		private CustomContractNetResponder(Agent agent, MessageTemplate template) {
-			super(agent, template);
+		private BatchContractNetResponder(Agent agent) {
+			super(agent, BatchBidResponder.TEMPLATE);
 		}
 
 		protected Behaviour createResponder(ACLMessage message) {
-			return new SSIteratedContractNetResponder(myAgent, message) {
+			final String conversationId = message.getConversationId();
+			if (!admission.admit(conversationId)) {
+				return admission.refuse(message);
+			}
+			return new BatchBidResponder(myAgent, message, strategy, random, percentage) {
 				private static final long serialVersionUID = 1L;
 
-				/**
-				 * Responds to the CFP message from the initiator with either a PROPOSE/REFUSE message.
-				 * If the payment is too low for the agent, it declines with a REFUSE message, 
-				 * otherwise, the agent will respond with a PROPOSE message.
-				 */
-				protected ACLMessage handleCfp(ACLMessage cfp) {
-					int payment = 0;
-					int backupPayment = 0;
-					try {
-						payment = Integer.parseInt(cfp.getContent().substring(cfp.getContent().lastIndexOf("|") + 1));
-						backupPayment = payment;
-					} catch (Exception e) {
-						System.out.println(getAID().getName() + " couldn't read the price.");
-					}
-
-					if (initialPayment == 0) {
-						initialPayment = payment;
-					}
-
-					Random generate = new Random();
-
-					int upperBound;
-					int length = String.valueOf(payment).length();
-
-					switch (length) {
-					case 1:
-						upperBound = 1;
-						break;
-					case 2:
-						upperBound = 5;
-						break;
-					case 3:
-						upperBound = 50;
-						break;
-					default:
-						upperBound = 300;
-						break;
-					}
+				public int onEnd() {
+					admission.release(conversationId);
+					return super.onEnd();
+				}
+			};
+		}
+	}
 
-					int randomNumber = generate.nextInt(upperBound) + 1;
-					int lowerBound = (int) (initialPayment * (percentage / 100.0f));
-					
-					if (randomNumber != 1 && (payment - randomNumber) > lowerBound) {
-						payment = (payment - randomNumber);
-					} else {
-						payment = 0;
-					}
+	private class CustomContractNetResponder extends SSResponderDispatcher {
+		private static final long serialVersionUID = 1L;
 
-					ACLMessage response = cfp.createReply();
+		private CustomContractNetResponder(Agent agent, MessageTemplate template) {
+			super(agent, template);
+		}
 
-					if (payment > 0) {
-						response.setPerformative(ACLMessage.PROPOSE);
-						if (helper.getRespondersRemaining() == 1) {
-							response.setContent(String.valueOf(backupPayment));
-						} else {
-							response.setContent(String.valueOf(payment));
-						}
-					} else {
-						upperBound = generate.nextInt(3000) + 1000;
-						doWait(upperBound);
-						
-						if (helper.getRespondersRemaining() == 1) {
-							response.setPerformative(ACLMessage.PROPOSE);
-							response.setContent(String.valueOf(backupPayment));
-						} else {
-							response.setPerformative(ACLMessage.REFUSE);
-						}
-					}
-					return response;
-				}
+		protected Behaviour createResponder(ACLMessage message) {
+			final String conversationId = message.getConversationId();
+			if (!admission.admit(conversationId)) {
+				return admission.refuse(message);
+			}
+			final SSIteratedContractNetResponder responder = new SSIteratedContractNetResponder(myAgent, message) {
+				private static final long serialVersionUID = 1L;
 
 				/**
 				 * The agent received an ACCEPT_PROPOSAL message, so it won the auction.
 				 */
 				protected ACLMessage handleAcceptProposal(ACLMessage msg, ACLMessage propose, ACLMessage accept) {
 					if (msg != null) {
+						byte[] content = accept.getByteSequenceContent();
 						String jobTitle = null;
-						int payment = 0;
-						try {
-							jobTitle = accept.getContent().substring(0, accept.getContent().indexOf("|"));
-							payment = Integer.parseInt(accept.getContent().substring(accept.getContent().lastIndexOf("|") + 1));
-						} catch (Exception e) {
+						long payment = 0;
+						if (BidCodec.isBid(content)) {
+							jobTitle = BidCodec.title(content);
+							payment = BidCodec.amount(content);
 						}
 
-						System.out.println(getAID().getName() + " has accepted the job: \"" + jobTitle + "\" from "
-								+ accept.getSender().getName() + ", and will receive $" + payment + " for completing it.");
+						log.jobAccepted(getAID().getName(), accept.getConversationId(), jobTitle, payment);
 						ACLMessage inform = accept.createReply();
 						inform.setPerformative(ACLMessage.INFORM);
 						return inform;
@@ -167,10 +154,21 @@ public class CarrierAgent extends Agent {
 				}
 
 				protected void handleRejectProposal(ACLMessage msg, ACLMessage propose, ACLMessage reject) {
-					System.out.println(reject.getSender().getName() + " cannot offer " + getAID().getName() + 
-							" the job due to unexpected results.");
+					log.jobRejected(getAID().getName(), reject.getConversationId());
+				}
+
+				/**
+				 * The conversation is over, however it ended, so its reservation and its place are released.
+				 */
+				public int onEnd() {
+					reservations.release(conversationId);
+					admission.release(conversationId);
+					return super.onEnd();
 				}
 			};
+
+			responder.registerHandleCfp(new BidCfpHandler(myAgent, responder, strategy, random, reservations));
+			return responder;
 		}
 	}
 }
@@ -0,0 +1,63 @@
+package no.hib.mod252;
+
+import java.util.SplittableRandom;
+
+/**
+ * This class decides how a carrier answers the CFP of an English auction. The carriers (see BidCfpHandler) and the simulator (see AuctionSimulator)
+ * both use it, so a simulated carrier bids and thinks exactly like an agent:
+ * the bid follows the bidding strategy of the carrier, from the floor of its reservation for the auction (see ReservationCache),
+ * a carrier who doesn't bid thinks for a while before it refuses, and the last carrier left proposes the payment of the CFP as it is.
+ *
+ * The instance is meant to be used by a single carrier, and is therefore not thread safe.
+ */
+public class CarrierDecision {
+	private final BiddingStrategy strategy;
+	private final SplittableRandom random;
+	private final ReservationCache reservations;
+
+	/**
+	 * @param strategy - the bidding strategy of the carrier
+	 * @param random - the random number generator of the carrier
+	 * @param reservations - the reservations of the carrier
+	 */
+	public CarrierDecision(BiddingStrategy strategy, SplittableRandom random, ReservationCache reservations) {
+		this.strategy = strategy;
+		this.random = random;
+		this.reservations = reservations;
+	}
+
+	/**
+	 * Decides the bid on a CFP, and records it in the reservation of the auction.
+	 * @param conversationId - the conversation-id of the auction
+	 * @param payment - the payment of the CFP in cents
+	 * @param round - the round of the CFP
+	 * @return - the bid in cents, 0 if the carrier doesn't bid
+	 */
+	public long bid(String conversationId, long payment, int round) {
+		ReservationCache.Reservation reservation = reservations.get(conversationId, payment);
+		long bid = strategy.bid(payment, reservation.getFloor(), round, random);
+		reservation.bid(bid, round);
+		return bid;
+	}
+
+	/**
+	 * Returns how long the carrier thinks before it replies: a bid is sent right away, while a refusal takes 1 to 4 seconds.
+	 * @param bid - the bid in cents, 0 if none
+	 * @return - ^ in milliseconds
+	 */
+	public long think(long bid) {
+		return bid > 0 ? 0 : random.nextInt(3000) + 1000;
+	}
+
+	/**
+	 * Returns the amount the carrier replies with once it's done thinking. The last carrier left in the auction
+	 * proposes the payment of the CFP rather than its bid, as nobody is left to undercut.
+	 * @param bid - the bid in cents, 0 if none
+	 * @param payment - the payment of the CFP in cents
+	 * @param remaining - the amount of responders still bidding in the auction
+	 * @return - the amount to propose in cents, or 0 to refuse
+	 */
+	public static long reply(long bid, long payment, int remaining) {
+		return remaining == 1 && payment > 0 ? payment : bid;
+	}
+}
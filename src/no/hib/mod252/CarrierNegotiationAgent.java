@@ -1,19 +1,21 @@
 package no.hib.mod252;
 
-import java.util.Random;
+import java.util.SplittableRandom;
 
 import jade.core.AID;
 import jade.core.Agent;
 import jade.core.behaviours.Behaviour;
+import jade.core.behaviours.CyclicBehaviour;
 import jade.core.behaviours.ParallelBehaviour;
 import jade.core.behaviours.SequentialBehaviour;
+import jade.core.behaviours.SimpleBehaviour;
 import jade.domain.FIPANames;
 import jade.domain.FIPAAgentManagement.ServiceDescription;
 import jade.lang.acl.ACLMessage;
 import jade.lang.acl.MessageTemplate;
+import jade.proto.SSContractNetResponder;
 import jade.proto.SSIteratedContractNetResponder;
 import jade.proto.SSResponderDispatcher;
-import jade.wrapper.AgentController;
 
 /**
  * This class creates an agent who acts as a responder.
@@ -21,18 +23,35 @@ import jade.wrapper.AgentController;
  * The agent tries to get the highest possible value for doing a job, 
  * but when there are other responders, they'll underbid each other, in hope for other responders to forfeit.
  * 
- * If the agent wins the auction, it will delegate the job to two of its employees.
- * The employees will then negotiate between each other to get a better deal than the default one.
+ * If the agent wins the auction, it will split the job into tasks, and delegate them to its employees.
+ * The agent mediates a negotiation where the employees trade tasks, to get a better deal than the default one (see TaskAllocation).
+ * The employees are started along with the agent (see EmployeePool), and the auction is informed once they're done negotiating.
  * 
- * Arguments (Optional): "Percentage (Integer)" The argument defines how low the
- * agent is willing to go based on the initial payment. If no argument is
+ * Arguments (Optional): "Percentage (Integer), Strategy (String)" The first argument defines how low the
+ * agent is willing to go based on the initial payment of each job (see ReservationCache). If no argument is
  * specified (or the format is invalid) it will use its default value: 50.
+ * The second argument names the bidding strategy (see BiddingStrategy.forName), which is "undercut" by default.
+ * The agent doesn't take part in batch auctions (see BatchCompanyAgent), and refuses their CFPs right away.
+ *
+ * System properties:
+ * "carrier.employees" - the amount of employees of each carrier (default 2, at least "carrier.delegates")
+ * "carrier.delegates" - the amount of employees a job is delegated to (default 2)
+ * "carrier.tasks" - the amount of tasks a job is split into (default 4)
+ * "auction.award.timeout" - how long (in milliseconds) the employees have to finish a job, unless the ACCEPT_PROPOSAL states it (default 30000)
  */
 public class CarrierNegotiationAgent extends Agent {
 	private static final long serialVersionUID = 1L;
 	private DFHelper helper;
-	private int initialPayment = 0;
+	private AuctionLog log;
+	private ReservationCache reservations;
+	private AdmissionControl admission;
 	private int percentage = 50;
+	private BiddingStrategy strategy = new UndercutBid();
+	private SplittableRandom random;
+	private EmployeePool employees;
+	private final int delegates = Math.max(1, Integer.getInteger("carrier.delegates", 2));
+	private final int tasks = Math.max(1, Integer.getInteger("carrier.tasks", 4));
+	private final long awardTimeout = Long.getLong("auction.award.timeout", 30000);
 
 	/**
 	 * Registers the agent with the Directory Facilitator as a Carrier, 
@@ -40,6 +59,8 @@ public class CarrierNegotiationAgent extends Agent {
 	 */
 	protected void setup() {
 		helper = DFHelper.getInstance();
+		random = AgentRandom.forAgent(getLocalName());
+		log = AuctionLog.getInstance();
 		ServiceDescription serviceDescription = new ServiceDescription();
 		serviceDescription.setName(getLocalName());
 		serviceDescription.setType("Carrier");
@@ -53,6 +74,17 @@ public class CarrierNegotiationAgent extends Agent {
 				percentage = Integer.parseInt(percentageArg);
 			}
 		}
+		if (args != null && args.length > 1) {
+			BiddingStrategy chosen = BiddingStrategy.forName((String) args[1]);
+			if (chosen != null) {
+				strategy = chosen;
+			} else {
+				log.warning(getAID().getName(), "Unknown strategy \"" + args[1] + "\", using \"undercut\" instead.");
+			}
+		}
+
+		reservations = new ReservationCache(percentage);
+		admission = new AdmissionControl(this);
 
 		final String IP = FIPANames.InteractionProtocol.FIPA_ITERATED_CONTRACT_NET;
 		MessageTemplate template = MessageTemplate.and(MessageTemplate.MatchProtocol(IP),
@@ -63,6 +95,30 @@ public class CarrierNegotiationAgent extends Agent {
 		ParallelBehaviour parallel = new ParallelBehaviour(ParallelBehaviour.WHEN_ALL);
 		sequential.addSubBehaviour(parallel);
 		parallel.addSubBehaviour(new CustomContractNetResponder(this, template));
+		parallel.addSubBehaviour(BatchBidResponder.refuser(this));
+
+		employees = new EmployeePool(this, Math.max(delegates, Integer.getInteger("carrier.employees", 2)));
+		addBehaviour(new CyclicBehaviour(this) {
+			private static final long serialVersionUID = 1L;
+
+			public void action() {
+				ACLMessage started = receive(EmployeePool.STARTED_TEMPLATE);
+				if (started != null) {
+					employees.ready(started.getSender());
+				} else {
+					block();
+				}
+			}
+		});
+		employees.start();
+	}
+
+	/**
+	 * De-registers the agent (unless it has been de-registered already), and stops its employees.
+	 */
+	protected void takeDown() {
+		helper.deregister(this);
+		employees.shutdown();
 	}
 
 	private class CustomContractNetResponder extends SSResponderDispatcher {
@@ -73,168 +129,241 @@ public class CarrierNegotiationAgent extends Agent {
 		}
 
 		protected Behaviour createResponder(ACLMessage message) {
-			return new SSIteratedContractNetResponder(myAgent, message) {
+			final String conversationId = message.getConversationId();
+			if (!admission.admit(conversationId)) {
+				return admission.refuse(message);
+			}
+			final SSIteratedContractNetResponder responder = new SSIteratedContractNetResponder(myAgent, message) {
 				private static final long serialVersionUID = 1L;
 
+				protected void handleRejectProposal(ACLMessage msg, ACLMessage propose, ACLMessage reject) {
+					log.jobRejected(getAID().getName(), reject.getConversationId());
+				}
+
 				/**
-				 * Responds to the CFP message from the initiator with either a PROPOSE/REFUSE message.
-				 * If the payment is too low for the agent, it declines with a REFUSE message, 
-				 * otherwise, the agent will respond with a PROPOSE message.
+				 * The conversation is over, however it ended, so its reservation and its place are released.
 				 */
-				protected ACLMessage handleCfp(ACLMessage cfp) {
-					int payment = 0;
-					int backupPayment = 0;
-					try {
-						payment = Integer.parseInt(cfp.getContent().substring(cfp.getContent().lastIndexOf("|") + 1));
-						backupPayment = payment;
-					} catch (Exception e) {
-						System.out.println(getAID().getName() + " couldn't read the price.");
-					}
+				public int onEnd() {
+					reservations.release(conversationId);
+					admission.release(conversationId);
+					return super.onEnd();
+				}
+			};
 
-					if (initialPayment == 0) {
-						initialPayment = payment;
-					}
+			responder.registerHandleCfp(new BidCfpHandler(myAgent, responder, strategy, random, reservations));
+			responder.registerHandleAcceptProposal(new DelegationHandler(myAgent, responder));
+			return responder;
+		}
+	}
 
-					Random generate = new Random();
-
-					int upperBound;
-					int length = String.valueOf(payment).length();
-
-					switch (length) {
-					case 1:
-						upperBound = 1;
-						break;
-					case 2:
-						upperBound = 5;
-						break;
-					case 3:
-						upperBound = 50;
-						break;
-					default:
-						upperBound = 300;
-						break;
-					}
+	/**
+	 * This class handles an ACCEPT_PROPOSAL on behalf of a contract net responder, and replaces its handleAcceptProposal method.
+	 * It leases employees (waiting for them if they're all busy), and mediates their negotiation over the tasks of the job:
+	 * the employees propose their costs, the tasks are traded until no deal lowers the total cost (see TaskAllocation),
+	 * and each employee is told which tasks it got. The ACCEPT_PROPOSAL is answered with an INFORM once every employee
+	 * has said that it's done. The agent is free to serve other conversations meanwhile.
+	 *
+	 * The employees have until the reply-by of the ACCEPT_PROPOSAL (or the award timeout) to finish, after which they're returned
+	 * and the ACCEPT_PROPOSAL is answered with a FAILURE. Each employee is counted once per step, however many replies it sends.
+	 */
+	private class DelegationHandler extends SimpleBehaviour {
+		private static final long serialVersionUID = 1L;
+		private final SSContractNetResponder responder;
+		private ACLMessage accept = null;
+		private AID[] leased = null;
+		private ACLMessage[] proposals = null;
+		private boolean[] answered = null;
+		private String conversationId = null;
+		private MessageTemplate proposalTemplate = null;
+		private MessageTemplate readyTemplate = null;
+		private int waiting = 0;
+		private long deadline = 0;
+		private boolean finished = false;
 
-					int randomNumber = generate.nextInt(upperBound) + 1;
-					int lowerBound = (int) (initialPayment * (percentage / 100.0f));
+		private DelegationHandler(Agent agent, SSContractNetResponder responder) {
+			super(agent);
+			this.responder = responder;
+		}
 
-					if (randomNumber != 1 && (payment - randomNumber) > lowerBound) {
-						payment = (payment - randomNumber);
-					} else {
-						payment = 0;
-					}
+		/**
+		 * The agent received an ACCEPT_PROPOSAL message, so it won the auction.
+		 */
+		public void action() {
+			if (accept == null) {
+				accept = (ACLMessage) getDataStore().get(responder.ACCEPT_PROPOSAL_KEY);
+				byte[] content = accept.getByteSequenceContent();
+				String jobTitle = null;
+				long payment = 0;
+				if (BidCodec.isBid(content)) {
+					jobTitle = BidCodec.title(content);
+					payment = BidCodec.amount(content);
+				}
+				log.jobAccepted(getAID().getName(), accept.getConversationId(), jobTitle, payment);
+				deadline = accept.getReplyByDate() != null ? accept.getReplyByDate().getTime() : System.currentTimeMillis() + awardTimeout;
+			}
 
-					ACLMessage response = cfp.createReply();
-
-					if (payment > 0) {
-						response.setPerformative(ACLMessage.PROPOSE);
-						if (helper.getRespondersRemaining() == 1) {
-							response.setContent(String.valueOf(backupPayment));
-						} else {
-							response.setContent(String.valueOf(payment));
-						}
-					} else {
-						upperBound = generate.nextInt(3000) + 1000;
-						doWait(upperBound);
-
-						if (helper.getRespondersRemaining() == 1) {
-							response.setPerformative(ACLMessage.PROPOSE);
-							response.setContent(String.valueOf(backupPayment));
-						} else {
-							response.setPerformative(ACLMessage.REFUSE);
-						}
-					}
-					return response;
+			long remaining = deadline - System.currentTimeMillis();
+			if (remaining <= 0) {
+				giveUp();
+				return;
+			}
+
+			if (leased == null) {
+				leased = employees.lease(delegates, this);
+				if (leased == null) {
+					block(remaining);
+					return;
 				}
+				delegateTask();
+			}
 
-				/**
-				 * The agent received an ACCEPT_PROPOSAL message, so it won the auction.
-				 */
-				protected ACLMessage handleAcceptProposal(ACLMessage msg, ACLMessage propose, ACLMessage accept) {
-					if (msg != null) {
-						String jobTitle = null;
-						int payment = 0;
-						try {
-							jobTitle = accept.getContent().substring(0, accept.getContent().indexOf("|"));
-							payment = Integer.parseInt(accept.getContent().substring(accept.getContent().lastIndexOf("|") + 1));
-						} catch (Exception e) {
-						}
-
-						System.out.println(getAID().getName() + " has accepted the job: \"" + jobTitle + "\" from "
-								+ accept.getSender().getName() + ", and will receive $" + payment + " for completing it.\n");
-
-						delegateTask(jobTitle, 5, "A1", "A2");
-						doWait(5000);
-
-						ACLMessage inform = accept.createReply();
-						inform.setPerformative(ACLMessage.INFORM);
-						return inform;
-					} else {
-						ACLMessage failure = accept.createReply();
-						failure.setPerformative(ACLMessage.FAILURE);
-						return failure;
+			if (proposals != null) {
+				ACLMessage reply = myAgent.receive(proposalTemplate);
+				if (reply == null) {
+					block(remaining);
+					return;
+				}
+				int i = answer(reply);
+				if (i >= 0) {
+					proposals[i] = reply;
+					if (--waiting == 0) {
+						allocate();
 					}
 				}
+				return;
+			}
 
-				protected void handleRejectProposal(ACLMessage msg, ACLMessage propose, ACLMessage reject) {
-					System.out.println(reject.getSender().getName() + " cannot offer " + getAID().getName() + " the job due to unexpected results.");
+			ACLMessage ready = myAgent.receive(readyTemplate);
+			if (ready == null) {
+				block(remaining);
+			} else if (answer(ready) >= 0 && --waiting == 0) {
+				employees.release(leased);
+				ACLMessage inform = accept.createReply();
+				inform.setPerformative(ACLMessage.INFORM);
+				getDataStore().put(responder.REPLY_KEY, inform);
+				finished = true;
+			}
+		}
+
+		public boolean done() {
+			return finished;
+		}
+
+		/**
+		 * Marks the sender of a reply as answered for the current step.
+		 * @return - the index of the employee, or -1 if it isn't leased or has answered already
+		 */
+		private int answer(ACLMessage reply) {
+			for (int i = 0; i < leased.length; i++) {
+				if (leased[i].equals(reply.getSender())) {
+					if (answered[i]) {
+						return -1;
+					}
+					answered[i] = true;
+					return i;
 				}
-			};
+			}
+			return -1;
 		}
 
 		/**
-		 * The carrier agent creates two additional agents whose job is to negotiate between each other.
-		 * They'll attempt to get a better deal than the default deal A1(a, d, c), A2(b, d).
-		 * The Employee agents then use their class to perform this negotiation.
-		 * @param jobTitle - the title of the job
-		 * @param cost - the cost of the default deal
-		 * @param employeeOne - the name of the first employee
-		 * @param employeeTwo - the name of the second employee
+		 * The employees didn't finish by the deadline, so they're returned, and the ACCEPT_PROPOSAL is answered with a FAILURE.
 		 */
-		private void delegateTask(String jobTitle, int cost, String employeeOne, String employeeTwo) {
-			System.out.println(getAID().getName() + " wants to delegate the job to two of its employees (" + employeeOne + ", " + employeeTwo + ") ...");
-			
-			createAgent(employeeOne);
-			createAgent(employeeTwo);
-			doWait(2000);
-			
-			System.out.println("\nCurrent total cost: " + cost + ", with delegation: " + employeeOne + "(a, d, c), " + employeeTwo + "(b, d)");
-
-			ACLMessage msg = new ACLMessage(ACLMessage.CFP);
-			msg.clearAllReceiver();
-			msg.clearAllReplyTo();
-			
-			AID empOne = new AID(getLocalName() + ":" + employeeOne, AID.ISLOCALNAME);
-			AID empTwo = new AID(getLocalName() + ":" + employeeTwo, AID.ISLOCALNAME);
-
-			Random selected = new Random();
-			if (selected.nextBoolean()) {
-				msg.addReplyTo(empOne);
-				msg.addReceiver(empTwo);
-				msg.setContent("2 for 2|" + cost + "|" + empOne.getName());
+		private void giveUp() {
+			if (leased != null) {
+				employees.release(leased);
 			} else {
-				msg.addReplyTo(empTwo);
-				msg.addReceiver(empOne);
-				msg.setContent("3 for 1|" + cost + "|" + empTwo.getName());
+				employees.cancel(this);
 			}
-			send(msg);
+			log.warning(getAID().getName(), "Its employees didn't finish the job in time, so it was given up.");
+			ACLMessage failure = accept.createReply();
+			failure.setPerformative(ACLMessage.FAILURE);
+			getDataStore().put(responder.REPLY_KEY, failure);
+			finished = true;
 		}
 
 		/**
-		 * Creates an Employee agent
-		 * @param agentName - the name of the agent
+		 * Sends a CFP listing the tasks of the job to the leased employees, who propose their costs.
 		 */
-		private void createAgent(String agentName) {
-			AgentController agentController;
-			agentName = getLocalName() + ":" + agentName;
-			String className = this.getClass().getPackage().getName().toString() + ".EmployeeAgent";
+		private void delegateTask() {
+			conversationId = accept.getConversationId() + "-delegation";
+			proposalTemplate = MessageTemplate.and(MessageTemplate.MatchConversationId(conversationId),
+					MessageTemplate.or(MessageTemplate.MatchPerformative(ACLMessage.PROPOSE), MessageTemplate.MatchPerformative(ACLMessage.REFUSE)));
+			readyTemplate = MessageTemplate.and(MessageTemplate.MatchOntology(EmployeePool.READY), MessageTemplate.MatchConversationId(conversationId));
+			proposals = new ACLMessage[leased.length];
+			answered = new boolean[leased.length];
+			waiting = leased.length;
 
-			try {
-				agentController = getContainerController().createNewAgent(agentName, className, null);
-				agentController.start();
-			} catch (Exception e) {
-				e.printStackTrace();
+			int[] all = new int[tasks];
+			for (int t = 0; t < tasks; t++) {
+				all[t] = t;
 			}
+			ACLMessage cfp = new ACLMessage(ACLMessage.CFP);
+			cfp.setConversationId(conversationId);
+			cfp.setByteSequenceContent(BidCodec.encodeTasks(all));
+			for (AID employee : leased) {
+				cfp.addReceiver(employee);
+			}
+			log.message(getAID().getName(), "wants to delegate " + tasks + " tasks to " + leased.length + " of its employees ...");
+			send(cfp);
+		}
+
+		/**
+		 * Allocates the tasks between the employees who proposed, and tells each employee which tasks it got.
+		 * The employees who didn't propose are rejected.
+		 */
+		private void allocate() {
+			int count = 0;
+			for (ACLMessage proposal : proposals) {
+				if (proposal != null && proposal.getPerformative() == ACLMessage.PROPOSE && isCosts(proposal.getByteSequenceContent())) {
+					count++;
+				}
+			}
+
+			long[][] costs = new long[count][];
+			int[] capacities = new int[count];
+			int[] indices = new int[proposals.length];
+			int next = 0;
+			for (int i = 0; i < proposals.length; i++) {
+				indices[i] = -1;
+				if (proposals[i] != null && proposals[i].getPerformative() == ACLMessage.PROPOSE && isCosts(proposals[i].getByteSequenceContent())) {
+					byte[] content = proposals[i].getByteSequenceContent();
+					costs[next] = new long[tasks];
+					for (int t = 0; t < tasks; t++) {
+						costs[next][t] = BidCodec.cost(content, t);
+					}
+					capacities[next] = BidCodec.costCapacity(content);
+					indices[i] = next++;
+				}
+			}
+
+			TaskAllocation allocation = null;
+			if (count > 0) {
+				allocation = new TaskAllocation(costs, capacities);
+				log.message(getAID().getName(), "Current total cost: " + allocation.getTotalCost() + ", with the default deal.");
+				allocation.negotiate();
+				log.message(getAID().getName(), "New total cost: " + allocation.getTotalCost() + ", after " + allocation.getTransfers()
+						+ " transfers and " + allocation.getSwaps() + " swaps between the employees.");
+			} else {
+				log.warning(getAID().getName(), "None of its employees proposed, so the tasks weren't delegated.");
+			}
+
+			for (int i = 0; i < leased.length; i++) {
+				ACLMessage reply = new ACLMessage(indices[i] < 0 ? ACLMessage.REJECT_PROPOSAL : ACLMessage.ACCEPT_PROPOSAL);
+				reply.addReceiver(leased[i]);
+				reply.setConversationId(conversationId);
+				if (indices[i] >= 0) {
+					reply.setByteSequenceContent(BidCodec.encodeTasks(allocation.getTasks(indices[i])));
+				}
+				send(reply);
+			}
+			proposals = null;
+			answered = new boolean[leased.length];
+			waiting = leased.length;
+		}
+
+		private boolean isCosts(byte[] content) {
+			return BidCodec.isCosts(content) && BidCodec.costCount(content) == tasks;
 		}
 	}
 }
@@ -1,206 +1,460 @@
 package no.hib.mod252;
 
 import no.hib.mod252.DFHelper;
-import java.util.ArrayList;
+import java.io.BufferedReader;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
 import java.util.Date;
-import java.util.Enumeration;
-import java.util.Hashtable;
+import java.util.HashSet;
 import java.util.Vector;
+import java.util.concurrent.ConcurrentHashMap;
 
 import jade.core.AID;
 import jade.core.Agent;
-import jade.core.behaviours.OneShotBehaviour;
+import jade.core.behaviours.CyclicBehaviour;
 import jade.lang.acl.ACLMessage;
+import jade.lang.acl.MessageTemplate;
 import jade.proto.ContractNetInitiator;
 import jade.domain.FIPANames;
 import jade.domain.FIPAAgentManagement.ServiceDescription;
 
 /**
  * This class creates an agent who acts as an initiator.
- * Its role is to handle incoming bids for an item (in this case, a job) the agent created.
+ * Its role is to handle incoming bids for items (in this case, jobs) the agent created.
  * The agent wants the lowest possible value, such that the agent pays the least amount possible in order to get a job done.
  * The more responders there are, the higher the probability is for the payment to decrease.
- * 
- * Arguments (Required): "Job Title (String), Payment (Integer)"
- * The first argument is the title of the job, while the second argument is the starting payment for the job.
+ *
+ * Every job is auctioned in a conversation of its own, so the agent may run any amount of auctions at the same time.
+ * The agent keeps running once its jobs are awarded, and accepts new jobs as REQUEST messages
+ * with the content "Job Title, Payment". The requester is informed once the job is awarded.
+ *
+ * Arguments (Optional): "Job Title (String), Payment (Integer)", repeated for each job,
+ * or "@File" where each line of the file holds a "Job Title, Payment".
+ * The title of a job is followed by its starting payment.
+ *
+ * If journals are enabled (see AuctionJournal), the auctions are recorded as they go. When the agent is restarted,
+ * it resumes the jobs which were still open, instead of starting the jobs in its arguments again.
+ * A job whose winner was sent an ACCEPT_PROPOSAL before the restart isn't auctioned again, even if the winner never confirmed it.
+ *
+ * With a large amount of carriers, the agent may auction to brokers instead (see BrokerAgent), who each speak for the carriers of their shard.
+ * A proposal from a broker counts as many bidders as the broker has carriers left, so the auction runs until a single carrier is left either way.
+ *
+ * System properties:
+ * "auction.responders" - the type of agents the jobs are auctioned to, "Carrier" (default) or "Broker"
+ * "auction.award.timeout" - how long (in milliseconds) the winner has to confirm a job, before the job is given up (default 30000)
  */
 public class CompanyAgent extends Agent {
 	private static final long serialVersionUID = 1L;
-	private Hashtable<String, Integer> availableJobs;
-	private ArrayList<Integer> paymentList;
+	private static final MessageTemplate REQUEST_TEMPLATE = MessageTemplate.MatchPerformative(ACLMessage.REQUEST);
+
+	private ConcurrentHashMap<String, Job> jobs;
 	private DFHelper helper;
-	private String jobTitle = null;
-	private String payment = null;
-	private int initialPayment;
+	private AuctionLog log;
+	private RoundTimeoutPolicy roundTimeouts;
+	private AuctionJournal journal;
+	private AuctionMetrics metrics;
+	private final String responders = System.getProperty("auction.responders", "Carrier");
+	private final long awardTimeout = Long.getLong("auction.award.timeout", 30000);
 
 	/**
-	 * Registers the agent with the Directory Facilitator as a Company, 
-	 * and prepares the agent for an outgoing message.
+	 * Registers the agent with the Directory Facilitator as a Company,
+	 * and starts an auction for each job in the arguments.
 	 */
 	protected void setup() {
 		helper = DFHelper.getInstance();
-		availableJobs = new Hashtable<String, Integer>();
+		log = AuctionLog.getInstance();
+		jobs = new ConcurrentHashMap<String, Job>();
+		roundTimeouts = new RoundTimeoutPolicy();
+		metrics = AuctionMetrics.getInstance();
+
+		ServiceDescription serviceDescription = new ServiceDescription();
+		serviceDescription.setType("Company");
+		serviceDescription.setName(getLocalName());
+		helper.register(this, serviceDescription);
 
+		journal = AuctionJournal.open(getLocalName());
 		Object[] args = getArguments();
-		if (args.length == 2) {
-			jobTitle = (String) args[0];
-			payment = (String) args[1];
-			
-			if (payment.matches("^\\d+$")) {
-				initialPayment = Double.valueOf(payment).intValue();
-
-				updateJobListings(jobTitle, initialPayment);
-
-				paymentList = new ArrayList<Integer>();
-				paymentList.add(initialPayment);
-
-				ServiceDescription serviceDescription = new ServiceDescription();
-				serviceDescription.setType("Company");
-				serviceDescription.setName(getLocalName());
-				helper.register(this, serviceDescription);
-			} else {
-				System.out.println("Payment must be a positive number (e.g. 100).");
-				System.out.println("Terminating: " + this.getAID().getName());
-				doDelete();
+		if (journal != null && !journal.getOpenJobs().isEmpty()) {
+			log.message(getAID().getName(), "Resuming " + journal.getOpenJobs().size() + " open jobs from the journal, the arguments are ignored.");
+			for (AuctionJournal.OpenJob openJob : journal.getOpenJobs()) {
+				resumeJob(openJob);
+			}
+		} else if (args != null && args.length == 1 && ((String) args[0]).startsWith("@")) {
+			readJobs(((String) args[0]).substring(1).trim());
+		} else if (args != null && args.length % 2 == 0) {
+			for (int i = 0; i < args.length; i += 2) {
+				submitJob(((String) args[i]).trim(), ((String) args[i + 1]).trim(), null);
 			}
 		} else {
-			System.out.println("Two arguments required. Please provide arguments in the format \"Job Title, Payment\", where Payment is a number (e.g. 100).");
-			System.out.println("Terminating: " + this.getAID().getName());
-			doDelete();
+			log.warning(getAID().getName(), "Please provide arguments in the format \"Job Title, Payment\", where Payment is a number (e.g. 100).");
 		}
 
-		addBehaviour(new ContractNetInitiator(this, null) {
+		addBehaviour(new CyclicBehaviour(this) {
 			private static final long serialVersionUID = 1L;
-			private int globalResponses = 0;
-
-			/**
-			 * Is initiated on startup, and sends a CFP message to agents listed as the type "Carrier".
-			 * The message contains the title for the job as well as its payment.
-			 */
-			public Vector<ACLMessage> prepareCfps(ACLMessage init) {
-				init = new ACLMessage(ACLMessage.CFP);
-				Vector<ACLMessage> messages = new Vector<ACLMessage>();
-
-				AID[] agents = helper.searchDF(getAgent(), "Carrier");
-
-				System.out.println("The Directory Facilitator found the following agents labeled as \"Carrier\": ");
-				for (AID agent : agents) {
-					System.out.println(agent.getName());
-					init.addReceiver(new AID((String) agent.getLocalName(), AID.ISLOCALNAME));
-				}
-				System.out.println();
 
-				if (agents.length == 0) {
-					System.out.println("No agents matching the type were found. Terminating: " + getAgent().getAID().getName());
-					helper.killAgent(getAgent());
+			public void action() {
+				ACLMessage request = receive(REQUEST_TEMPLATE);
+				if (request != null) {
+					handleRequest(request);
 				} else {
-					init.setProtocol(FIPANames.InteractionProtocol.FIPA_ITERATED_CONTRACT_NET);
-					init.setReplyByDate(new Date(System.currentTimeMillis() + 10000));
-					init.setContent(jobTitle + "|" + payment);
+					block();
+				}
+			}
+		});
+	}
 
-					messages.addElement(init);
+	/**
+	 * De-registers the agent, unless it has been de-registered already.
+	 */
+	protected void takeDown() {
+		helper.deregister(this);
+		if (journal != null) {
+			journal.close();
+		}
+	}
+
+	/**
+	 * A REQUEST message holds a new job. The requester is told whether the job was agreed to.
+	 * @param request - the incoming message to handle
+	 */
+	protected void handleRequest(ACLMessage request) {
+		String content = request.getContent();
+		int separator = content == null ? -1 : content.lastIndexOf(",");
+		ACLMessage reply = request.createReply();
+
+		if (separator > 0 && submitJob(content.substring(0, separator).trim(), content.substring(separator + 1).trim(), request)) {
+			reply.setPerformative(ACLMessage.AGREE);
+		} else {
+			reply.setPerformative(ACLMessage.REFUSE);
+			reply.setContent("The content must be in the format \"Job Title, Payment\", where Payment is a number (e.g. 100).");
+		}
+		send(reply);
+	}
+
+	/**
+	 * Reads a file where each line holds a "Job Title, Payment".
+	 * @param fileName - the name of the file
+	 */
+	private void readJobs(String fileName) {
+		try (BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(fileName), StandardCharsets.UTF_8))) {
+			String line;
+			while ((line = reader.readLine()) != null) {
+				int separator = line.lastIndexOf(",");
+				if (separator > 0) {
+					submitJob(line.substring(0, separator).trim(), line.substring(separator + 1).trim(), null);
 				}
+			}
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+	}
 
-				return messages;
+	/**
+	 * Validates a job, and starts an auction for it.
+	 * @param jobTitle - the title of the job
+	 * @param payment - the starting payment for the job, in whole dollars
+	 * @param request - the REQUEST message the job came from, or null
+	 * @return - false if the payment isn't a positive number
+	 */
+	private boolean submitJob(String jobTitle, String payment, ACLMessage request) {
+		if (jobTitle.isEmpty() || !payment.matches("^\\d+$")) {
+			log.warning(getAID().getName(), "Payment must be a positive number (e.g. 100), the job \"" + jobTitle + "\" was ignored.");
+			return false;
+		}
+		updateJobListings(jobTitle, BidCodec.cents(Long.parseLong(payment)), request);
+		return true;
+	}
+
+	/**
+	 * Adds a new job to the job listings, and starts an auction for it.
+	 * @param jobTitle - the title of the job
+	 * @param payment - the payment for the job, in cents
+	 * @param request - the REQUEST message the job came from, or null
+	 * @return - the job
+	 */
+	public Job updateJobListings(String jobTitle, long payment, ACLMessage request) {
+		Job job = new Job(helper.newJobId(), jobTitle, payment, helper.newConversationId(this), request);
+		jobs.put(job.getConversationId(), job);
+		log.jobIssued(getAID().getName(), jobTitle, payment);
+		if (journal != null) {
+			journal.jobOpened(job.getId(), payment, job.getEncodedTitle());
+		}
+		addBehaviour(new JobAuction(job, 1));
+		return job;
+	}
+
+	/**
+	 * Starts a new auction for a job which was still open when the agent last stopped (see AuctionJournal).
+	 * The auction goes on from the round the job had reached, but from the starting payment of the job, since it's both the most the company pays
+	 * and what the carriers base their floor on (see ReservationCache), which they work out again for the new conversation.
+	 * If the job had been accepted already, its winner may have taken it on, so the job is closed instead of being auctioned twice.
+	 * @param openJob - the job as it was recorded in the journal
+	 */
+	private void resumeJob(AuctionJournal.OpenJob openJob) {
+		helper.reserveJobId(openJob.getId());
+		if (openJob.getWinner() != null) {
+			log.warning(getAID().getName(), "The job \"" + openJob.getTitle() + "\" was accepted for $" + BidCodec.format(openJob.getAccepted())
+					+ " by " + openJob.getWinner() + " without a confirmation before the restart, it isn't auctioned again.");
+			journal.closed(openJob.getId());
+			return;
+		}
+		Job job = new Job(openJob.getId(), openJob.getTitle(), openJob.getPayment(), helper.newConversationId(this), null);
+		jobs.put(job.getConversationId(), job);
+		addBehaviour(new JobAuction(job, openJob.getRound()));
+	}
+
+	/**
+	 * Removes a job from the job listings once its auction is over, and informs the requester (if any).
+	 * @param job - the job
+	 * @param performative - INFORM if the job was awarded, FAILURE otherwise
+	 * @param payment - the payment the job was awarded for, in cents
+	 * @param rounds - the amount of rounds the auction lasted
+	 */
+	protected void finishJob(Job job, int performative, long payment, int rounds) {
+		if (jobs.remove(job.getConversationId()) == null) {
+			return;
+		}
+		helper.releaseAuction(job.getConversationId());
+		if (journal != null) {
+			journal.closed(job.getId());
+		}
+
+		if (job.getRequest() != null) {
+			ACLMessage reply = job.getRequest().createReply();
+			reply.setPerformative(performative);
+			reply.setByteSequenceContent(BidCodec.encode(job.getId(), payment, rounds, 0, job.getEncodedTitle()));
+			send(reply);
+		}
+	}
+
+	/**
+	 * Returns the jobs which are currently being auctioned, keyed by conversation-id.
+	 * @return - ^
+	 */
+	public ConcurrentHashMap<String, Job> getJobs() {
+		return jobs;
+	}
+
+	/**
+	 * The auction of a single job, following the FIPA Iterated Contract Net Protocol.
+	 */
+	protected class JobAuction extends ContractNetInitiator {
+		private static final long serialVersionUID = 1L;
+		private final Job job;
+		private final BidHistory history = new BidHistory();
+		private int globalResponses = 0;
+		private int brokeredBidders = 0;
+		private int round;
+		private long awarded = 0;
+		private long roundOpened = 0;
+		private final RoundBuilder nextRound = new RoundBuilder();
+		private final RoundClosePolicy closePolicy = new RoundClosePolicy();
+		private boolean closedEarly = false;
+
+		/**
+		 * @param job - the job to auction
+		 * @param round - the first round (above 1 if the auction is resumed)
+		 */
+		public JobAuction(Job job, int round) {
+			super(CompanyAgent.this, null);
+			this.job = job;
+			this.round = round;
+		}
+
+		/**
+		 * Is initiated on startup, and sends a CFP message to agents listed as the type "Carrier" (or "Broker", see "auction.responders").
+		 * The message contains the title for the job as well as its payment.
+		 * The responders have to answer by a deadline, which follows how fast proposals have arrived lately (see RoundTimeoutPolicy).
+		 */
+		public Vector<ACLMessage> prepareCfps(ACLMessage init) {
+			init = new ACLMessage(ACLMessage.CFP);
+			Vector<ACLMessage> messages = new Vector<ACLMessage>();
+
+			AID[] agents = helper.lookup(myAgent, responders);
+
+			for (AID agent : agents) {
+				init.addReceiver(agent);
 			}
 
-			protected void handlePropose(ACLMessage propose, Vector v) {
-				System.out.println(propose.getSender().getName() + " proposes $" + propose.getContent() + " for the job: \"" + jobTitle + "\".");
+			if (agents.length == 0) {
+				log.warning(getAID().getName(), "No agents matching the type \"" + responders + "\" were found for the job: \"" + job.getTitle() + "\".");
+				log.notAwarded(getAID().getName(), job.getConversationId(), 0);
+				finishJob(job, ACLMessage.FAILURE, 0, 0);
+			} else {
+				helper.openAuction(job.getConversationId(), agents);
+
+				init.setConversationId(job.getConversationId());
+				init.setProtocol(FIPANames.InteractionProtocol.FIPA_ITERATED_CONTRACT_NET);
+				roundOpened = System.currentTimeMillis();
+				history.openRound(round, job.getPayment(), roundOpened);
+				closePolicy.open(job.getPayment());
+				if (journal != null) {
+					journal.roundOpened(job.getId(), round);
+				}
+				Date replyBy = new Date(roundTimeouts.replyBy(roundOpened));
+				init.setReplyByDate(replyBy);
+				byte[] content = BidCodec.encode(job.getId(), job.getPayment(), round, replyBy.getTime(), job.getEncodedTitle());
+				BidCodec.setResponders(content, agents.length);
+				init.setByteSequenceContent(content);
+
+				messages.addElement(init);
+				log.auctionStarted(getAID().getName(), job.getConversationId(), job.getTitle(), job.getPayment(), agents.length);
+				metrics.auctionStarted();
 			}
 
-			protected void handleRefuse(ACLMessage refuse) {
+			return messages;
+		}
+
+		/**
+		 * Records the proposal in the bid history, and closes the round without waiting for the remaining responders,
+		 * if the proposals so far are enough (see RoundClosePolicy).
+		 * A proposal whose price can't be read counts as a refusal.
+		 */
+		protected void handlePropose(ACLMessage propose, Vector v) {
+			if (!BidCodec.isBid(propose.getByteSequenceContent())) {
 				globalResponses++;
-				System.out.println(refuse.getSender().getName() + " is not willing to bid any lower.");
-				helper.removeReceiverAgent(refuse.getSender(), refuse);
+				log.warning(getAID().getName(), "couldn't read the price proposed by " + propose.getSender().getName() + ".");
+				helper.removeReceiverAgent(propose.getSender(), propose);
+				return;
+			}
+			long amount = BidCodec.amount(propose.getByteSequenceContent());
+			long now = System.currentTimeMillis();
+			long latency = now - roundOpened;
+			roundTimeouts.record(latency);
+			metrics.bidReceived(latency);
+			log.bidReceived(propose.getSender().getName(), propose.getConversationId(), amount, round);
+			history.bid(propose.getSender().getName(), amount, now);
+			// A broker proposes on behalf of several carriers (see BrokerAgent)
+			brokeredBidders += Math.max(0, BidCodec.responders(propose.getByteSequenceContent()) - 1);
+			if (closePolicy.propose(history)) {
+				closedEarly = true;
+				skipNextResponses();
 			}
+		}
 
-			protected void handleFailure(ACLMessage failure) {
-				globalResponses++;
-				System.out.println(failure.getSender().getName() + " failed to reply.");
-				helper.removeReceiverAgent(failure.getSender(), failure);
+		protected void handleRefuse(ACLMessage refuse) {
+			globalResponses++;
+			log.bidRefused(refuse.getSender().getName(), refuse.getConversationId());
+			helper.removeReceiverAgent(refuse.getSender(), refuse);
+		}
+
+		protected void handleFailure(ACLMessage failure) {
+			globalResponses++;
+			log.responderFailed(failure.getSender().getName(), failure.getConversationId());
+			helper.removeReceiverAgent(failure.getSender(), failure);
+		}
+
+		/**
+		 * A response which arrives after its round was closed. A late PROPOSE is rejected, such that the responder stops waiting for an answer,
+		 * and the responder is removed from the auction, as it isn't part of the current round.
+		 */
+		protected void handleOutOfSequence(ACLMessage msg) {
+			int performative = msg.getPerformative();
+			if (performative == ACLMessage.PROPOSE) {
+				ACLMessage reject = msg.createReply();
+				reject.setPerformative(ACLMessage.REJECT_PROPOSAL);
+				send(reject);
 			}
+			if (performative == ACLMessage.PROPOSE || performative == ACLMessage.REFUSE || performative == ACLMessage.FAILURE) {
+				helper.removeReceiverAgent(msg.getSender(), msg);
+			}
+		}
 
-			/**
-			 * Once a responder responds with INFORM, the initiator knows that the job
-			 * has been accepted, so all the agents whom took part in the auction can terminate.
-			 */
-			protected void handleInform(ACLMessage inform) {
-				globalResponses++;
-				System.out.println("\n" + getAID().getName() + " has no further jobs available.");
-				availableJobs.remove(jobTitle);
-				for (Agent agent : helper.getRegisteredAgents()) {
-					helper.killAgent(agent);
-				}
+		/**
+		 * Returns the bids of the auction so far.
+		 * @return - ^
+		 */
+		public BidHistory getHistory() {
+			return history;
+		}
+
+		/**
+		 * Once a responder responds with INFORM, the initiator knows that the job
+		 * has been accepted, so the job is removed from the job listings.
+		 */
+		protected void handleInform(ACLMessage inform) {
+			globalResponses++;
+			log.awarded(getAID().getName(), job.getConversationId(), inform.getSender().getName(), awarded, round);
+			metrics.auctionAwarded(round);
+			if (journal != null) {
+				journal.awarded(job.getId(), round, inform.getSender().getName(), awarded);
 			}
-			
-			/**
-			 * Handles the responses from other responders, and decides whether to send a new CFP (if multiple responders are remaining), 
-			 * or accept the proposal from a responder (if the responder is the only one left in the auction).
-			 */
-			protected void handleAllResponses(Vector responses, Vector acceptances) {
-				int agentsLeft = responses.size() - globalResponses;
-				globalResponses = 0;
-
-				System.out.println("\n" + getAID().getName() + " is handling all: Received " + agentsLeft + " responses.");
-
-				int bestProposal = Integer.parseInt(payment);
-				ACLMessage reply = new ACLMessage(ACLMessage.CFP);
-				Vector<ACLMessage> cfpVector = new Vector<ACLMessage>();
-				Enumeration<?> e = responses.elements();
-				ArrayList<ACLMessage> responderList = new ArrayList<ACLMessage>();
-
-				while (e.hasMoreElements()) {
-					ACLMessage msg = (ACLMessage) e.nextElement();
-					if (msg.getPerformative() == ACLMessage.PROPOSE) {
-						int proposal = Integer.parseInt(msg.getContent());
-						reply = msg.createReply();
-						reply.setPerformative(ACLMessage.CFP);
-						responderList.add(reply);
-						if (proposal <= bestProposal) {
-							bestProposal = proposal;
-						}
-						cfpVector.addElement(reply);
-					}
-				}
-				if (agentsLeft > 1) {
-					paymentList.add(bestProposal);
+			finishJob(job, ACLMessage.INFORM, awarded, round);
+		}
 
-					for (int i = 0; i < responderList.size(); i++) {
-						responderList.get(i).setContent(jobTitle + "|" + bestProposal);
-						cfpVector.set(i, responderList.get(i));
-					}
-					
-					System.out.println(agentsLeft + " carriers are still bidding: Proceeding to the next round.");
-					System.out.println(getAID().getName() + " is issuing CFP's with a payment of $" + paymentList.get(paymentList.size() - 1) + ".\n");
-					newIteration(cfpVector);
-				} else if (agentsLeft == 1) {
-					reply.setPerformative(ACLMessage.REJECT_PROPOSAL);
-					if (bestProposal <= paymentList.get(paymentList.size() - 1)) {
-						reply.setContent(jobTitle + "|" + bestProposal);
-						reply.setPerformative(ACLMessage.ACCEPT_PROPOSAL);
-					}
-					acceptances.addElement(reply);
-				} else {
-					System.out.println("No agent accepted the job.");
+		/**
+		 * The auction is over. If the winner didn't confirm the job (it answered with a FAILURE, or not by the deadline),
+		 * the job is given up as not awarded, so it doesn't stay in the job listings, the auction accounting or the journal.
+		 */
+		protected void handleAllResultNotifications(Vector notifications) {
+			if (jobs.containsKey(job.getConversationId())) {
+				log.notAwarded(getAID().getName(), job.getConversationId(), round);
+				metrics.auctionFailed(round);
+				finishJob(job, ACLMessage.FAILURE, 0, round);
+			}
+		}
+
+		/**
+		 * Handles the responses from other responders, and decides whether to send a new CFP (if multiple responders are remaining),
+		 * or accept the proposal from a responder (if the responder is the only one left in the auction).
+		 * The next round's CFPs are built while the responses are read (see RoundBuilder).
+		 */
+		protected void handleAllResponses(Vector responses, Vector acceptances) {
+			long started = System.nanoTime();
+			int agentsLeft = responses.size() - globalResponses + brokeredBidders;
+			globalResponses = 0;
+			brokeredBidders = 0;
+			if (closedEarly) {
+				closedEarly = false;
+				HashSet<String> answered = new HashSet<String>();
+				for (Object response : responses) {
+					answered.add(((ACLMessage) response).getSender().getName());
 				}
+				helper.retainParticipants(job.getConversationId(), answered);
 			}
 
-		});
-	}
+			Date replyBy = new Date(roundTimeouts.replyBy(System.currentTimeMillis()));
+			byte[] content = BidCodec.encode(job.getId(), job.getPayment(), round + 1, replyBy.getTime(), job.getEncodedTitle());
+			BidCodec.setResponders(content, helper.getRespondersRemaining(job.getConversationId()));
+			long bestProposal = nextRound.build(responses, job.getPayment(), content, replyBy);
+			ACLMessage reply = nextRound.getLast();
 
-	/**
-	 * Adds a new job to a hashtable.
-	 * @param jobTitle - the title of the job
-	 * @param payment - the payment for the job
-	 */
-	public void updateJobListings(final String jobTitle, final int payment) {
-		addBehaviour(new OneShotBehaviour() {
-			private static final long serialVersionUID = 1L;
+			if (agentsLeft > 1) {
+				log.roundClosed(getAID().getName(), job.getConversationId(), round, bestProposal, agentsLeft);
+				round++;
+				roundOpened = System.currentTimeMillis();
+				history.openRound(round, bestProposal, roundOpened);
+				closePolicy.open(bestProposal);
+				if (journal != null) {
+					journal.roundOpened(job.getId(), round);
+				}
 
-			public void action() {
-				availableJobs.put(jobTitle, new Integer(payment));
-				System.out.println(getAID().getName() + " has issued a new job: \"" + jobTitle + "\", starting at $" + payment + ".\n");
+				newIteration(nextRound.getCfps());
+			} else if (agentsLeft == 1 && reply != null) {
+				reply.setPerformative(ACLMessage.REJECT_PROPOSAL);
+				reply.setReplyByDate(null);
+				if (bestProposal <= history.getPayment()) {
+					reply.setByteSequenceContent(BidCodec.encode(job.getId(), bestProposal, round, 0, job.getEncodedTitle()));
+					reply.setPerformative(ACLMessage.ACCEPT_PROPOSAL);
+					reply.setReplyByDate(new Date(System.currentTimeMillis() + awardTimeout));
+					awarded = bestProposal;
+					if (journal != null) {
+						journal.accepted(job.getId(), round, ((AID) reply.getAllReceiver().next()).getName(), awarded);
+					}
+				} else {
+					log.notAwarded(getAID().getName(), job.getConversationId(), round);
+					metrics.auctionFailed(round);
+					finishJob(job, ACLMessage.FAILURE, 0, round);
+				}
+				acceptances.addElement(reply);
+			} else {
+				log.notAwarded(getAID().getName(), job.getConversationId(), round);
+				metrics.auctionFailed(round);
+				finishJob(job, ACLMessage.FAILURE, 0, round);
 			}
-		});
+			metrics.roundClosed(System.nanoTime() - started);
+		}
 	}
 }
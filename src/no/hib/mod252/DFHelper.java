@@ -1,27 +1,56 @@
 package no.hib.mod252;
 
-import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 import jade.core.AID;
 import jade.core.Agent;
 import jade.lang.acl.ACLMessage;
 import jade.domain.DFService;
 import jade.domain.FIPAException;
+import jade.domain.FIPAAgentManagement.FIPAManagementVocabulary;
+import jade.domain.FIPAAgentManagement.Property;
 import jade.domain.FIPAAgentManagement.SearchConstraints;
 import jade.domain.FIPAAgentManagement.ServiceDescription;
 import jade.domain.FIPAAgentManagement.DFAgentDescription;
+import jade.proto.AchieveREInitiator;
 
 /**
  * This class is created upon initialization of a Carrier Agent (responder), 
  * a Company Agent (initiator) or an Employee Agent. Its purpose is to provide the agents 
  * with information relevant to the bidding process, as well as termination of agents.
+ * 
+ * Several auctions may run at the same time, so the amount of responders left is kept
+ * per conversation-id. Each auction gets its own atomic counter, hence auctions never contend with each other.
+ * Once an auction is over, only its participants are released, while every other agent stays registered.
+ * Lookups are answered from a local directory per service, which the DF keeps up to date through a subscription.
+ *
+ * The helper belongs to a single JVM. When the agents are spread across several JVMs, each agent registers with the shard of its JVM,
+ * and a company only looks up the agents of its own shards (see ShardPartitioner). The responders of an auction are counted
+ * by the JVM of its company, which tells the carriers how many are left in each CFP.
  */
 public final class DFHelper extends Agent {
 	private static final long serialVersionUID = 1L;
-	private int respondersRemaining = 0;
+
+	/**
+	 * The service property of a saturated agent (see setSaturated). A single instance, so it's removed by identity.
+	 */
+	public static final Property SATURATED = new Property("saturated", "true");
+
+	private final ConcurrentHashMap<String, Auction> auctions = new ConcurrentHashMap<String, Auction>();
+	private final AtomicLong conversationSequence = new AtomicLong();
+	private final AtomicLong jobSequence = new AtomicLong();
+	private final ConcurrentHashMap<String, ServiceDirectory> directories = new ConcurrentHashMap<String, ServiceDirectory>();
 
 	private static DFHelper instance = null;
-	private ArrayList<Agent> registeredAgents = new ArrayList<Agent>();
+	private final AuctionLog log = AuctionLog.getInstance();
+	private final Set<Agent> registeredAgents = ConcurrentHashMap.newKeySet();
+	private final ConcurrentHashMap<Agent, DFAgentDescription> descriptions = new ConcurrentHashMap<Agent, DFAgentDescription>();
+	private final ShardPartitioner partitioner = new ShardPartitioner();
 
 	private DFHelper() {
 	}
@@ -34,24 +63,65 @@ public final class DFHelper extends Agent {
 	}
 
 	/**
-	 * Register a new agent with given properties
+	 * Register a new agent with given properties, along with the shard of this JVM
 	 * @param agent - an agent
 	 * @param serviceDescription - properties for the agent
 	 */
 	public void register(Agent agent, ServiceDescription serviceDescription) {
 		DFAgentDescription dfAgentDescription = new DFAgentDescription();
-		dfAgentDescription.setName(getAID());
+		dfAgentDescription.setName(agent.getAID());
+		serviceDescription.addProperties(new Property(ShardPartitioner.PROPERTY, ShardPartitioner.localShard()));
 		dfAgentDescription.addServices(serviceDescription);
 
 		try {
 			registeredAgents.add(agent);
+			descriptions.put(agent, dfAgentDescription);
 			DFService.register(agent, dfAgentDescription);
-			System.out.println(agent.getName() + " registered as: " + serviceDescription.getType() + ".");
+			log.registered(agent.getName(), serviceDescription.getType());
 		} catch (FIPAException e) {
 			e.printStackTrace();
 		}
 	}
 
+	/**
+	 * Marks a registered agent as saturated (or not) in the DF, such that the lookups of other agents leave it out until the mark is lifted
+	 * (see AdmissionControl). The subscribers are told about the change like any other registration.
+	 * The DF is asked by a behaviour of the agent, so the agent goes on with its auctions instead of waiting for the answer.
+	 * @param agent - a registered agent, which calls this from one of its own behaviours
+	 * @param saturated - whether the agent is saturated
+	 */
+	public void setSaturated(final Agent agent, final boolean saturated) {
+		DFAgentDescription dfAgentDescription = descriptions.get(agent);
+		if (dfAgentDescription == null) {
+			return;
+		}
+		Iterator<?> services = dfAgentDescription.getAllServices();
+		while (services.hasNext()) {
+			ServiceDescription serviceDescription = (ServiceDescription) services.next();
+			serviceDescription.removeProperties(SATURATED);
+			if (saturated) {
+				serviceDescription.addProperties(SATURATED);
+			}
+		}
+
+		ACLMessage request = DFService.createRequestMessage(agent, agent.getDefaultDF(), FIPAManagementVocabulary.MODIFY, dfAgentDescription, null);
+		agent.addBehaviour(new AchieveREInitiator(agent, request) {
+			private static final long serialVersionUID = 1L;
+
+			protected void handleInform(ACLMessage inform) {
+				log.message(agent.getName(), saturated ? "is saturated, and takes no more CFPs for now." : "has room for CFPs again.");
+			}
+
+			protected void handleRefuse(ACLMessage refuse) {
+				log.warning(agent.getName(), "couldn't change its registration in the DF.");
+			}
+
+			protected void handleFailure(ACLMessage failure) {
+				log.warning(agent.getName(), "couldn't change its registration in the DF.");
+			}
+		});
+	}
+
 	/**
 	 * Searches for all the agents with a certain type.
 	 * @param agent - an agent
@@ -59,6 +129,24 @@ public final class DFHelper extends Agent {
 	 * @return - an array of AIDs (if any), or null (if none)
 	 */
 	public AID[] searchDF(Agent agent, String service) {
+		DFAgentDescription[] result = search(agent, service);
+		if (result == null) {
+			return null;
+		}
+		AID[] agents = new AID[result.length];
+		for (int i = 0; i < result.length; i++) {
+			agents[i] = result[i].getName();
+		}
+		return agents;
+	}
+
+	/**
+	 * Searches for the descriptions of all the agents with a certain type.
+	 * @param agent - an agent
+	 * @param service - type to search for
+	 * @return - the descriptions (if any), or null (if the search failed)
+	 */
+	private DFAgentDescription[] search(Agent agent, String service) {
 		DFAgentDescription dfAgentDescription = new DFAgentDescription();
 		ServiceDescription serviceDescription = new ServiceDescription();
 		serviceDescription.setType(service);
@@ -67,58 +155,226 @@ public final class DFHelper extends Agent {
 		SearchConstraints findAll = new SearchConstraints();
 		findAll.setMaxResults(new Long(-1));
 		
+		long started = System.nanoTime();
 		try {
 			DFAgentDescription[] result = DFService.search(agent, dfAgentDescription, findAll);
-			AID[] agents = new AID[result.length];
-			for (int i = 0; i < result.length; i++) {
-				agents[i] = result[i].getName();
-				respondersRemaining++;
-			}
-			return agents;
+			AuctionMetrics.getInstance().dfSearched(System.nanoTime() - started);
+			return result;
 		} catch (FIPAException e) {
 			e.printStackTrace();
 		}
 		return null;
 	}
 
+	/**
+	 * Returns all the agents with a certain type in the shards of the given agent, without a round-trip to the DF.
+	 * The first lookup of a type searches the DF once, and subscribes to its changes on behalf of the given agent.
+	 * @param agent - an agent
+	 * @param service - type to search for
+	 * @return - an array of AIDs, shared between all callers (must not be modified)
+	 */
+	public AID[] lookup(Agent agent, String service) {
+		ServiceDirectory directory = directories.get(service);
+		if (directory == null || directory.getOwner() == null) {
+			synchronized (directories) {
+				directory = directories.get(service);
+				if (directory == null) {
+					directory = new ServiceDirectory(service);
+					directories.put(service, directory);
+				}
+				if (directory.getOwner() == null) {
+					directory.subscribe(agent, search(agent, service));
+				}
+			}
+		}
+		return directory.getAgents(agent.getLocalName(), partitioner);
+	}
+
+	/**
+	 * Returns all the agents with a certain type in a single shard, e.g. the carriers a broker auctions to (see BrokerAgent).
+	 * Like lookup, the DF is only searched by the first lookup of the type.
+	 * @param agent - an agent
+	 * @param service - type to search for
+	 * @param shard - the name of the shard
+	 * @return - an array of AIDs, shared between all callers (must not be modified)
+	 */
+	public AID[] lookup(Agent agent, String service, String shard) {
+		lookup(agent, service);
+		return directories.get(service).getAgents(shard);
+	}
+
+	/**
+	 * Creates a conversation-id which is unique within this JVM.
+	 * @param agent - the initiator of the auction
+	 * @return - the new conversation-id
+	 */
+	public String newConversationId(Agent agent) {
+		return agent.getLocalName() + "-" + conversationSequence.incrementAndGet();
+	}
+
+	/**
+	 * Creates a job id which is unique within this JVM.
+	 * @return - the new job id
+	 */
+	public long newJobId() {
+		return jobSequence.incrementAndGet();
+	}
+
+	/**
+	 * Makes sure newJobId never returns an id which is already in use, e.g. by a job resumed from a journal.
+	 * @param jobId - the id in use
+	 */
+	public void reserveJobId(long jobId) {
+		jobSequence.accumulateAndGet(jobId, Math::max);
+	}
+
+	/**
+	 * Starts the responder accounting for an auction.
+	 * @param conversationId - the conversation-id of the auction
+	 * @param responders - the responders the CFP was sent to
+	 */
+	public void openAuction(String conversationId, AID[] responders) {
+		auctions.put(conversationId, new Auction(responders));
+	}
+
+	/**
+	 * Stops the responder accounting for an auction, and releases its participants.
+	 * The participants stay registered, so they can take part in other auctions.
+	 * @param conversationId - the conversation-id of the auction
+	 * @return - the names of the participants who were still bidding when the auction ended
+	 */
+	public Set<String> releaseAuction(String conversationId) {
+		Auction auction = auctions.remove(conversationId);
+		if (auction == null) {
+			return Collections.emptySet();
+		}
+		return auction.participants;
+	}
+
+	/**
+	 * Returns the names of the participants who are still bidding in an auction.
+	 * @param conversationId - the conversation-id of the auction
+	 * @return - ^ (empty if the auction is unknown)
+	 */
+	public Set<String> getParticipants(String conversationId) {
+		Auction auction = auctions.get(conversationId);
+		if (auction == null) {
+			return Collections.emptySet();
+		}
+		return Collections.unmodifiableSet(auction.participants);
+	}
+
 	/**
 	 * Removes a receiver from the ongoing auction, but does not terminate it.
 	 * @param agent - the agent to remove
 	 * @param msg - the message it's associated with
 	 */
 	public void removeReceiverAgent(AID agent, ACLMessage msg) {
-		respondersRemaining--;
-		System.out.println(agent.getName() + " was removed from receivers.");
+		Auction auction = auctions.get(msg.getConversationId());
+		if (auction != null && auction.participants.remove(agent.getName())) {
+			auction.remaining.decrementAndGet();
+		}
+		log.responderRemoved(agent.getName(), msg.getConversationId());
 		msg.removeReceiver(agent);
 	}
 
 	/**
-	 * De-registers and kills the specified agent, but states that it simply "left" (brutal)
-	 * @param agent - an agent to kill
+	 * Removes the participants who didn't answer a round which was closed early (see RoundClosePolicy), as they don't take part in the next round.
+	 * @param conversationId - the conversation-id of the auction
+	 * @param answered - the names of the participants who answered the round
 	 */
-	public void killAgent(Agent agent) {
+	public void retainParticipants(String conversationId, Set<String> answered) {
+		Auction auction = auctions.get(conversationId);
+		if (auction == null) {
+			return;
+		}
+		for (String participant : auction.participants) {
+			if (!answered.contains(participant) && auction.participants.remove(participant)) {
+				auction.remaining.decrementAndGet();
+				log.responderRemoved(participant, conversationId);
+			}
+		}
+	}
+
+	/**
+	 * De-registers the specified agent. Agents call this from takeDown, so it does nothing if the agent is already de-registered.
+	 * @param agent - an agent
+	 */
+	public void deregister(Agent agent) {
+		if (!registeredAgents.remove(agent)) {
+			return;
+		}
+		descriptions.remove(agent);
+		for (ServiceDirectory directory : directories.values()) {
+			if (directory.getOwner() == agent) {
+				directory.release();
+			}
+		}
 		try {
-			System.out.println(agent.getAID().getName() + " left.");
 			DFService.deregister(agent);
-			agent.doDelete();
-		} catch (Exception e) {
+			log.deregistered(agent.getAID().getName());
+		} catch (FIPAException e) {
 			e.printStackTrace();
 		}
 	}
 
+	/**
+	 * De-registers and kills the specified agent, but states that it simply "left" (brutal)
+	 * @param agent - an agent to kill
+	 */
+	public void killAgent(Agent agent) {
+		deregister(agent);
+		agent.doDelete();
+	}
+
 	/**
 	 * Returns the total amount of responders left in the auction.
-	 * @return - ^
+	 * @param conversationId - the conversation-id of the auction
+	 * @return - ^ (0 if the auction is unknown)
 	 */
-	public int getRespondersRemaining() {
-		return respondersRemaining;
+	public int getRespondersRemaining(String conversationId) {
+		if (conversationId == null) {
+			return 0;
+		}
+		Auction auction = auctions.get(conversationId);
+		return auction == null ? 0 : auction.remaining.get();
 	}
 
 	/**
-	 * Returns a list of registered agents.
-	 * @return - ^
+	 * Returns the amount of responders left in the auction of a CFP. The count is kept by the company, so a carrier in another
+	 * container (or JVM) than the company reads it from the CFP instead, as it was when the CFP was sent.
+	 * @param cfp - a CFP of the auction
+	 * @return - ^ (0 if unknown)
 	 */
-	public ArrayList<Agent> getRegisteredAgents() {
-		return registeredAgents;
+	public int getRespondersRemaining(ACLMessage cfp) {
+		Auction auction = auctions.get(cfp.getConversationId());
+		if (auction != null) {
+			return auction.remaining.get();
+		}
+		byte[] content = cfp.getByteSequenceContent();
+		return BidCodec.isBid(content) ? BidCodec.responders(content) : 0;
+	}
+
+	/**
+	 * Returns the registered agents.
+	 * @return - ^ (read-only)
+	 */
+	public Set<Agent> getRegisteredAgents() {
+		return Collections.unmodifiableSet(registeredAgents);
+	}
+
+	/**
+	 * The responder accounting of a single auction.
+	 */
+	private static final class Auction {
+		private final AtomicInteger remaining;
+		private final Set<String> participants = ConcurrentHashMap.newKeySet();
+
+		private Auction(AID[] responders) {
+			for (AID responder : responders) {
+				participants.add(responder.getName());
+			}
+			remaining = new AtomicInteger(participants.size());
+		}
 	}
 }
@@ -0,0 +1,75 @@
+package no.hib.mod252;
+
+import jade.core.Agent;
+import jade.core.behaviours.SimpleBehaviour;
+import jade.lang.acl.ACLMessage;
+import jade.proto.SSContractNetResponder;
+
+/**
+ * This class handles a CFP on behalf of a contract net responder, and replaces its handleCfp method.
+ * The agent may "think" for a while before it replies, but instead of putting the whole agent to sleep (doWait),
+ * only this behaviour is blocked until the time has passed. The agent is therefore free to serve other conversations meanwhile.
+ *
+ * Register it with SSContractNetResponder.registerHandleCfp().
+ */
+public abstract class DeferredCfpHandler extends SimpleBehaviour {
+	private static final long serialVersionUID = 1L;
+	private final AuctionMetrics metrics = AuctionMetrics.getInstance();
+	private final SSContractNetResponder responder;
+	private ACLMessage cfp = null;
+	private long wakeupTime = 0;
+	private boolean finished = false;
+
+	public DeferredCfpHandler(Agent agent, SSContractNetResponder responder) {
+		super(agent);
+		this.responder = responder;
+	}
+
+	public void action() {
+		if (cfp == null) {
+			cfp = (ACLMessage) getDataStore().get(responder.CFP_KEY);
+			wakeupTime = System.currentTimeMillis() + think(cfp);
+		}
+
+		long blockTime = wakeupTime - System.currentTimeMillis();
+		if (blockTime > 0) {
+			block(blockTime);
+		} else {
+			metrics.cfpReplyScheduled(-blockTime);
+			getDataStore().put(responder.REPLY_KEY, reply(cfp));
+			finished = true;
+		}
+	}
+
+	public boolean done() {
+		return finished;
+	}
+
+	/**
+	 * Prepares the handler for the next CFP of the conversation (iterated contract net).
+	 */
+	public int onEnd() {
+		reset();
+		return super.onEnd();
+	}
+
+	public void reset() {
+		super.reset();
+		cfp = null;
+		finished = false;
+	}
+
+	/**
+	 * Decides how to answer the CFP.
+	 * @param cfp - the incoming CFP
+	 * @return - how long (in milliseconds) the agent thinks before it replies
+	 */
+	protected abstract long think(ACLMessage cfp);
+
+	/**
+	 * Creates the reply once the agent is done thinking.
+	 * @param cfp - the incoming CFP
+	 * @return - the PROPOSE/REFUSE message
+	 */
+	protected abstract ACLMessage reply(ACLMessage cfp);
+}
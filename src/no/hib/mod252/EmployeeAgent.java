@@ -1,5 +1,8 @@
 package no.hib.mod252;
 
+import java.util.Arrays;
+import java.util.SplittableRandom;
+
 import jade.core.Agent;
 import jade.core.behaviours.CyclicBehaviour;
 import jade.domain.FIPAAgentManagement.ServiceDescription;
@@ -7,19 +10,43 @@ import jade.lang.acl.ACLMessage;
 import jade.lang.acl.MessageTemplate;
 
 /**
- * This class creates an agent who acts as a responder. Its role is to negotiate
- * with another Employee agent in order to get a better deal than a set default deal.
+ * This class creates an agent who acts as a responder. Its role is to take part in the negotiation
+ * of how the tasks of a delegated job are divided between the employees of a carrier (see TaskAllocation).
+ *
+ * Each employee has its own cost for each task. When the carrier delegates a job, it sends a CFP listing the tasks,
+ * and the employee proposes its cost for each of them. The carrier mediates the negotiation, and tells each employee
+ * which tasks it ended up with in an ACCEPT_PROPOSAL.
+ *
+ * An employee belongs to the pool of a carrier (see EmployeePool), and tells the carrier once it's ready for a negotiation,
+ * both after it has started, and after each negotiation.
+ *
+ * Arguments (Optional): "Carrier (String), Capacity (Integer)" The name of the carrier the employee works for,
+ * and the largest amount of tasks the employee takes on in a job (see the "employee.capacity" property).
+ *
+ * System properties:
+ * "employee.capacity" - the largest amount of tasks an employee takes on in a job, unless given as an argument (default 0, i.e. no limit)
+ * "employee.maxCost" - the highest cost of a task (default 9)
  */
 public class EmployeeAgent extends Agent {
 	private static final long serialVersionUID = 1L;
+	private static final MessageTemplate TEMPLATE = MessageTemplate.or(MessageTemplate.MatchPerformative(ACLMessage.CFP),
+			MessageTemplate.or(MessageTemplate.MatchPerformative(ACLMessage.ACCEPT_PROPOSAL), MessageTemplate.MatchPerformative(ACLMessage.REJECT_PROPOSAL)));
 	private DFHelper helper;
+	private AuctionLog log;
+	private String carrier = null;
+	private int capacity = Integer.getInteger("employee.capacity", 0);
+	private final int maxCost = Math.max(1, Integer.getInteger("employee.maxCost", 9));
+	private SplittableRandom random;
+	private long[] costTable = new long[0];
 
 	/**
-	 * Registers the agent with the Directory Facilitator as an Employee, 
+	 * Registers the agent with the Directory Facilitator as an Employee,
 	 * and prepares the agent for an incoming message.
 	 */
 	protected void setup() {
 		helper = DFHelper.getInstance();
+		random = AgentRandom.forAgent(getLocalName());
+		log = AuctionLog.getInstance();
 		ServiceDescription serviceDescription = new ServiceDescription();
 		serviceDescription.setName(getLocalName());
 		serviceDescription.setType("Employee");
@@ -30,57 +57,101 @@ public class EmployeeAgent extends Agent {
 			private static final long serialVersionUID = 1L;
 
 			public void action() {
-				ACLMessage cfp = receive(MessageTemplate.MatchPerformative(ACLMessage.CFP));
-				ACLMessage accept = receive(MessageTemplate.MatchPerformative(ACLMessage.ACCEPT_PROPOSAL));
+				ACLMessage msg = receive(TEMPLATE);
 
-				if (cfp != null) {
-					handleCfp(cfp);
-				} else if (accept != null) {
-					handleAcceptProposal(accept);
-				} else {
+				if (msg == null) {
 					block();
+				} else if (msg.getPerformative() == ACLMessage.CFP) {
+					handleCfp(msg);
+				} else if (msg.getPerformative() == ACLMessage.ACCEPT_PROPOSAL) {
+					handleAcceptProposal(msg);
+				} else {
+					ready(msg.getConversationId());
 				}
 			}
 		});
+
+		Object[] args = getArguments();
+		if (args != null && args.length > 1 && ((String) args[1]).matches("^\\d+$")) {
+			capacity = Integer.parseInt((String) args[1]);
+		}
+		if (args != null && args.length > 0) {
+			carrier = (String) args[0];
+			send(EmployeePool.readyMessage(carrier, EmployeePool.STARTED));
+		}
 	}
 
 	/**
-	 * Responds to the CFP message from another agent with a new ACCEPT_PROPOSAL message.
+	 * De-registers the agent, unless it has been de-registered already.
+	 */
+	protected void takeDown() {
+		helper.deregister(this);
+	}
+
+	/**
+	 * Responds to the CFP message from the carrier with the agent's cost for each task, and its capacity.
 	 * @param cfp - the incoming message to handle
 	 */
 	protected void handleCfp(ACLMessage cfp) {
-		String employeeName = cfp.getContent().substring(cfp.getContent().lastIndexOf("|") + 1);
-		String content = cfp.getContent().substring(0, cfp.getContent().lastIndexOf("|") - 2);
-		System.out.println(employeeName + " is proposing " + content + " for " + getAID().getName() + ".\n");
-		ACLMessage accept = cfp.createReply();
-		accept.setContent(cfp.getContent());
-		accept.setPerformative(ACLMessage.ACCEPT_PROPOSAL);
-		send(accept);
+		byte[] content = cfp.getByteSequenceContent();
+		ACLMessage reply = cfp.createReply();
+
+		if (BidCodec.isTasks(content)) {
+			long[] costs = new long[BidCodec.taskCount(content)];
+			for (int i = 0; i < costs.length; i++) {
+				costs[i] = cost(BidCodec.task(content, i));
+			}
+			reply.setPerformative(ACLMessage.PROPOSE);
+			reply.setByteSequenceContent(BidCodec.encodeCosts(capacity, costs));
+		} else {
+			log.warning(getAID().getName(), "couldn't read the tasks.");
+			reply.setPerformative(ACLMessage.REFUSE);
+		}
+		send(reply);
 	}
 
 	/**
-	 * The agent receives an ACCEPT_PROPOSAL message, so a new delegation is in order.
+	 * The agent receives an ACCEPT_PROPOSAL message holding the tasks it was given, so it's done with the negotiation.
 	 * @param accept - the incoming message to handle
 	 */
 	protected void handleAcceptProposal(ACLMessage accept) {
-		String content = accept.getContent();
-		String senderName = accept.getSender().getLocalName();
-		String localName = getLocalName().substring(getLocalName().lastIndexOf(":") + 1);
-		String employeeName = senderName.substring(senderName.lastIndexOf(":") + 1);
-		int cost = Integer.parseInt(content.substring(content.lastIndexOf("|") - 1, content.lastIndexOf("|"))) - 1;
-		System.out.println(accept.getSender().getName() + " accepts the proposal!");
-		System.out.print("New total cost: " + cost + ", with delegation: ");
-		if (accept.getContent().contains("2 for 2")) {
-			System.out.println(localName + "(a, c), " + employeeName + "(b, d)");
-		} else {
-			System.out.println(employeeName + "(a, d, c), " + localName + "(b)");
+		byte[] content = accept.getByteSequenceContent();
+		if (BidCodec.isTasks(content)) {
+			StringBuilder tasks = new StringBuilder();
+			long total = 0;
+			for (int i = 0; i < BidCodec.taskCount(content); i++) {
+				int task = BidCodec.task(content, i);
+				tasks.append(i == 0 ? "" : ", ").append(TaskAllocation.taskName(task));
+				total += cost(task);
+			}
+			log.message(getAID().getName(), "takes on the tasks (" + tasks + ") at a cost of " + total + ".");
+		}
+		ready(accept.getConversationId());
+	}
+
+	/**
+	 * Returns the agent's cost for a task. The costs are drawn once per task, and stay the same in every negotiation.
+	 * @param task - the task
+	 * @return - ^
+	 */
+	private long cost(int task) {
+		if (task >= costTable.length) {
+			int size = costTable.length;
+			costTable = Arrays.copyOf(costTable, Math.max(task + 1, size * 2));
+			for (int i = size; i < costTable.length; i++) {
+				costTable[i] = random.nextInt(maxCost) + 1;
+			}
 		}
-		ACLMessage inform = accept.createReply();
-		inform.setPerformative(ACLMessage.INFORM);
-		send(inform);
+		return costTable[task];
 	}
 
-	protected void handleInform(ACLMessage inform) {
-		System.out.println("The employees negotiation was successful!");
+	/**
+	 * Tells the carrier (if any) that the agent is done with a negotiation.
+	 * @param conversationId - the conversation-id of the negotiation
+	 */
+	private void ready(String conversationId) {
+		if (carrier != null) {
+			send(EmployeePool.readyMessage(carrier, conversationId));
+		}
 	}
 }
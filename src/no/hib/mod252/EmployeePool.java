@@ -0,0 +1,161 @@
+package no.hib.mod252;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+
+import jade.core.AID;
+import jade.core.Agent;
+import jade.core.behaviours.Behaviour;
+import jade.lang.acl.ACLMessage;
+import jade.lang.acl.MessageTemplate;
+import jade.wrapper.AgentController;
+import jade.wrapper.StaleProxyException;
+
+/**
+ * This class keeps the employees of a carrier, which are started once along with the carrier, instead of once per job.
+ * The carrier leases employees for a negotiation, and returns them once the negotiation is over.
+ *
+ * An employee tells its carrier that it's ready with an INFORM message of the ontology READY, both once it has registered,
+ * and once it's done with a negotiation. An employee is only leased once it has said so, so nobody has to sleep and hope.
+ * A behaviour which asks for more employees than are idle is restarted once employees are returned.
+ *
+ * The pool is used by the agent which owns it only, so it's not thread safe.
+ */
+public class EmployeePool {
+	/**
+	 * The ontology of the messages an employee sends to its carrier once it's ready.
+	 */
+	public static final String READY = "employee-ready";
+
+	/**
+	 * The conversation-id of the message an employee sends once it has started.
+	 * After a negotiation, the message has the conversation-id of the negotiation instead.
+	 */
+	public static final String STARTED = "employee-started";
+
+	/**
+	 * Matches the messages of employees which have started.
+	 */
+	public static final MessageTemplate STARTED_TEMPLATE = MessageTemplate.and(MessageTemplate.MatchOntology(READY),
+			MessageTemplate.MatchConversationId(STARTED));
+
+	private final Agent carrier;
+	private final int size;
+	private final ArrayDeque<AID> idle = new ArrayDeque<AID>();
+	private final ArrayList<AgentController> employees = new ArrayList<AgentController>();
+	private final ArrayDeque<Behaviour> waiting = new ArrayDeque<Behaviour>();
+
+	/**
+	 * @param carrier - the carrier the employees work for
+	 * @param size - the amount of employees
+	 */
+	public EmployeePool(Agent carrier, int size) {
+		this.carrier = carrier;
+		this.size = size;
+	}
+
+	/**
+	 * Starts the employees, named "Carrier:A1", "Carrier:A2", and so on. They're leased once they've said that they're ready.
+	 */
+	public void start() {
+		String className = EmployeeAgent.class.getName();
+		for (int i = 1; i <= size; i++) {
+			try {
+				AgentController controller = carrier.getContainerController().createNewAgent(carrier.getLocalName() + ":A" + i, className,
+						new Object[] {carrier.getAID().getName()});
+				controller.start();
+				employees.add(controller);
+			} catch (Exception e) {
+				e.printStackTrace();
+			}
+		}
+	}
+
+	/**
+	 * Leases idle employees. If there aren't enough of them, nothing is leased, and the behaviour is restarted once employees are returned.
+	 * @param count - the amount of employees needed
+	 * @param waiter - the behaviour to restart if the employees aren't available yet
+	 * @return - the employees, or null if there aren't enough of them yet
+	 */
+	public AID[] lease(int count, Behaviour waiter) {
+		if (idle.size() < count) {
+			if (!waiting.contains(waiter)) {
+				waiting.add(waiter);
+			}
+			return null;
+		}
+		waiting.remove(waiter);
+		AID[] leased = new AID[count];
+		for (int i = 0; i < count; i++) {
+			leased[i] = idle.poll();
+		}
+		return leased;
+	}
+
+	/**
+	 * Stops waiting for employees, e.g. once the behaviour has given up.
+	 * @param waiter - the behaviour which asked for employees
+	 */
+	public void cancel(Behaviour waiter) {
+		waiting.remove(waiter);
+	}
+
+	/**
+	 * An employee is ready to be leased, either because it has started, or because it was returned.
+	 * The behaviours waiting for employees are restarted.
+	 * @param employee - the employee
+	 */
+	public void ready(AID employee) {
+		idle.add(employee);
+		for (Behaviour waiter : waiting) {
+			waiter.restart();
+		}
+	}
+
+	/**
+	 * Returns employees once their negotiation is over.
+	 * @param leased - the employees
+	 */
+	public void release(AID[] leased) {
+		for (AID employee : leased) {
+			ready(employee);
+		}
+	}
+
+	/**
+	 * Returns the amount of employees which are ready to be leased.
+	 * @return - ^
+	 */
+	public int getIdle() {
+		return idle.size();
+	}
+
+	/**
+	 * Kills the employees, e.g. once the carrier is taken down.
+	 */
+	public void shutdown() {
+		for (AgentController controller : employees) {
+			try {
+				controller.kill();
+			} catch (StaleProxyException e) {
+				// The employee is gone already, e.g. as its container is being killed
+			}
+		}
+		employees.clear();
+		idle.clear();
+	}
+
+	/**
+	 * Creates the message an employee sends to its carrier once it's ready.
+	 * @param carrier - the name of the carrier
+	 * @param conversationId - the conversation-id of the negotiation the employee is done with, or STARTED
+	 * @return - ^
+	 */
+	public static ACLMessage readyMessage(String carrier, String conversationId) {
+		ACLMessage ready = new ACLMessage(ACLMessage.INFORM);
+		ready.addReceiver(new AID(carrier, AID.ISGUID));
+		ready.setOntology(READY);
+		ready.setConversationId(conversationId);
+		return ready;
+	}
+}
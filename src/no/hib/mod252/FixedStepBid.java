@@ -0,0 +1,30 @@
+package no.hib.mod252;
+
+import java.util.SplittableRandom;
+
+/**
+ * This strategy undercuts the current payment by the same amount in every round, as long as the bid stays above the floor.
+ */
+public final class FixedStepBid implements BiddingStrategy {
+	public static final long DEFAULT_STEP = BidCodec.cents(5);
+
+	private final long step;
+
+	/**
+	 * @param step - the amount to undercut the payment by, in cents
+	 */
+	public FixedStepBid(long step) {
+		this.step = Math.max(1, step);
+	}
+
+	public long bid(long payment, long floor, int round, SplittableRandom random) {
+		if (payment - step > floor) {
+			return payment - step;
+		}
+		return 0;
+	}
+
+	public long maxUndercut(long payment) {
+		return step;
+	}
+}
@@ -0,0 +1,68 @@
+package no.hib.mod252;
+
+import jade.lang.acl.ACLMessage;
+
+/**
+ * This class describes a job a company wants to get done.
+ * Each job is auctioned in a conversation of its own, so the conversation-id identifies the job within the company.
+ */
+public class Job {
+	private final long id;
+	private final String title;
+	private final byte[] encodedTitle;
+	private final long payment;
+	private final String conversationId;
+	private final ACLMessage request;
+
+	/**
+	 * @param id - the id of the job (see DFHelper.newJobId)
+	 * @param title - the title of the job
+	 * @param payment - the starting payment in cents
+	 * @param conversationId - the conversation-id of the auction
+	 * @param request - the REQUEST message the job came from, or null
+	 */
+	public Job(long id, String title, long payment, String conversationId, ACLMessage request) {
+		this.id = id;
+		this.title = title;
+		this.encodedTitle = BidCodec.encodeTitle(title);
+		this.payment = payment;
+		this.conversationId = conversationId;
+		this.request = request;
+	}
+
+	public long getId() {
+		return id;
+	}
+
+	public String getTitle() {
+		return title;
+	}
+
+	/**
+	 * Returns the title as UTF-8, ready to be attached to a bid (see BidCodec).
+	 * @return - ^
+	 */
+	public byte[] getEncodedTitle() {
+		return encodedTitle;
+	}
+
+	/**
+	 * Returns the starting payment in cents.
+	 * @return - ^
+	 */
+	public long getPayment() {
+		return payment;
+	}
+
+	public String getConversationId() {
+		return conversationId;
+	}
+
+	/**
+	 * Returns the REQUEST message the job came from.
+	 * @return - ^ (null if the job came from the arguments or a file)
+	 */
+	public ACLMessage getRequest() {
+		return request;
+	}
+}
@@ -0,0 +1,170 @@
+package no.hib.mod252;
+
+import java.util.HashMap;
+
+import jade.core.AID;
+import jade.core.Agent;
+import jade.core.Profile;
+import jade.core.ProfileImpl;
+import jade.core.Runtime;
+import jade.core.behaviours.CyclicBehaviour;
+import jade.lang.acl.ACLMessage;
+import jade.wrapper.AgentContainer;
+import jade.wrapper.AgentController;
+import jade.wrapper.StaleProxyException;
+
+/**
+ * This class runs a load test without the JADE GUI. It boots a main container in this JVM, starts the carriers and companies,
+ * and starts auctions at a given rate. The results are collected from the event log (see LoadMetrics) and printed once every auction is over.
+ *
+ * In the English variant, the jobs are sent as REQUEST messages to the companies (CompanyAgent, or CompanyNegotiationAgent) in turn.
+ * In the negotiation variant, the carriers are CarrierNegotiationAgents, who delegate each job they win to their employees.
+ * In the Vickrey variant, a VickreyCompanyAgent is started for each job, as it only auctions a single job.
+ *
+ * Arguments (Optional), as "key=value":
+ * "variant" - english (default), negotiation or vickrey
+ * "carriers" - the amount of carriers (default 10)
+ * "companies" - the amount of companies in the English variants (default 2)
+ * "auctions" - the amount of auctions (default 100)
+ * "rate" - the amount of auctions started per second (default 10)
+ * "payment" - the starting payment of each job in whole dollars (default 1000)
+ * "strategy" - the bidding strategy of the carriers (see BiddingStrategy.forName, default undercut)
+ * "timeout" - the longest time to wait for the auctions, in seconds (default 600)
+ *
+ * The events are written to the file "load-driver.log", unless the system property "auction.log.file" says otherwise.
+ * The log level is always TRACE, whatever "auction.log.level" says, as the message counts rely on the TRACE events.
+ */
+public class LoadDriver {
+	private static final String REQUESTER = "LoadRequester";
+
+	public static void main(String[] args) throws Exception {
+		HashMap<String, String> options = new HashMap<String, String>();
+		for (String arg : args) {
+			int separator = arg.indexOf('=');
+			if (separator > 0) {
+				options.put(arg.substring(0, separator).trim(), arg.substring(separator + 1).trim());
+			}
+		}
+		String variant = option(options, "variant", "english");
+		int carriers = Integer.parseInt(option(options, "carriers", "10"));
+		int companies = Integer.parseInt(option(options, "companies", "2"));
+		int auctions = Integer.parseInt(option(options, "auctions", "100"));
+		double rate = Double.parseDouble(option(options, "rate", "10"));
+		String payment = option(options, "payment", "1000");
+		String strategy = option(options, "strategy", "undercut");
+		long timeout = Long.parseLong(option(options, "timeout", "600")) * 1000;
+
+		if (System.getProperty("auction.log.file") == null) {
+			System.setProperty("auction.log.file", "load-driver.log");
+		}
+		AuctionLog log = AuctionLog.getInstance();
+		if (log.getLevel() != AuctionEvent.Level.TRACE) {
+			System.out.println("Raising the log level from " + log.getLevel() + " to TRACE, as the message counts rely on it.");
+			log.setLevel(AuctionEvent.Level.TRACE);
+		}
+		LoadMetrics metrics = new LoadMetrics(auctions);
+		log.addSink(metrics);
+
+		Runtime runtime = Runtime.instance();
+		runtime.setCloseVM(false);
+		Profile profile = new ProfileImpl();
+		profile.setParameter(Profile.GUI, "false");
+		AgentContainer container = runtime.createMainContainer(profile);
+
+		boolean vickrey = variant.equals("vickrey");
+		String carrierClass = CarrierAgent.class.getName();
+		if (vickrey) {
+			carrierClass = VickreyCarrierAgent.class.getName();
+		} else if (variant.equals("negotiation")) {
+			carrierClass = CarrierNegotiationAgent.class.getName();
+		}
+		String companyClass = variant.equals("negotiation") ? CompanyNegotiationAgent.class.getName() : CompanyAgent.class.getName();
+		for (int i = 1; i <= carriers; i++) {
+			container.createNewAgent("Carrier" + i, carrierClass, new Object[] { "50", strategy }).start();
+		}
+
+		AgentController requester = null;
+		if (!vickrey) {
+			for (int i = 1; i <= companies; i++) {
+				container.createNewAgent("Company" + i, companyClass, new Object[0]).start();
+			}
+			requester = container.createNewAgent(REQUESTER, Requester.class.getName(), new Object[] { Integer.toString(companies) });
+			requester.start();
+		}
+
+		System.out.println("Starting " + auctions + " " + variant + " auctions at " + rate + "/sec with " + carriers + " carriers.");
+		long start = System.nanoTime();
+		for (int i = 1; i <= auctions; i++) {
+			long due = start + (long) ((i - 1) * 1e9 / rate);
+			long wait = due - System.nanoTime();
+			if (wait > 0) {
+				Thread.sleep(wait / 1000000, (int) (wait % 1000000));
+			}
+
+			String title = "Load " + i;
+			if (vickrey) {
+				container.createNewAgent("Company" + i, VickreyCompanyAgent.class.getName(), new Object[] { title, payment }).start();
+			} else {
+				requester.putO2AObject(title + ", " + payment, AgentController.ASYNC);
+			}
+		}
+
+		if (!metrics.await(timeout)) {
+			System.out.println("Timed out before every auction was over.");
+		}
+		log.removeSink(metrics);
+		log.flush();
+		System.out.print(metrics.report());
+		if (log.getDropped() > 0) {
+			System.out.println("Events dropped by the log: " + log.getDropped() + " (the message counts are incomplete)");
+		}
+
+		try {
+			container.kill();
+		} catch (StaleProxyException e) {
+			e.printStackTrace();
+		}
+		runtime.shutDown();
+		System.exit(0);
+	}
+
+	private static String option(HashMap<String, String> options, String key, String defaultValue) {
+		String value = options.get(key);
+		return value == null ? defaultValue : value;
+	}
+
+	/**
+	 * This agent sends the jobs handed to it by the load driver as REQUEST messages, to the companies in turn.
+	 * The replies of the companies are discarded, as the results are taken from the event log.
+	 *
+	 * Arguments (Required): "Companies (Integer)"
+	 * The companies are expected to be named "Company1", "Company2" and so on.
+	 */
+	public static class Requester extends Agent {
+		private static final long serialVersionUID = 1L;
+		private int companies;
+		private int next = 0;
+
+		protected void setup() {
+			companies = Integer.parseInt((String) getArguments()[0]);
+			setEnabledO2ACommunication(true, 0);
+
+			addBehaviour(new CyclicBehaviour(this) {
+				private static final long serialVersionUID = 1L;
+
+				public void action() {
+					Object job = getO2AObject();
+					if (job != null) {
+						ACLMessage request = new ACLMessage(ACLMessage.REQUEST);
+						request.addReceiver(new AID("Company" + (next % companies + 1), AID.ISLOCALNAME));
+						request.setContent((String) job);
+						send(request);
+						next++;
+					} else if (receive() == null) {
+						block();
+					}
+				}
+			});
+		}
+	}
+}
@@ -0,0 +1,168 @@
+package no.hib.mod252;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * This class collects the numbers of a load test (see LoadDriver) from the event log.
+ * It follows every auction from AUCTION_STARTED until it's awarded (or not), and counts the messages of the auction:
+ * the CFPs of each round, the responses (PROPOSE, REFUSE and FAILURE), the ACCEPT_PROPOSAL or REJECT_PROPOSAL messages and the final INFORM.
+ * A job which is given up before its auction starts (e.g. as there are no carriers) only logs NOT_AWARDED, and is over right away.
+ *
+ * Like every sink, it's only called by the writer thread of AuctionLog, while the results are read once the load test is over.
+ * The counts rely on the TRACE events, so they're only complete if the log level is TRACE and no events were dropped.
+ */
+public class LoadMetrics implements AuctionEventSink {
+	private final HashMap<String, Auction> auctions = new HashMap<String, Auction>();
+	private final CountDownLatch finished;
+	private final long[] latencies;
+	private volatile int completed = 0;
+	private volatile int awarded = 0;
+	private volatile long rounds = 0;
+	private volatile long firstStart = 0;
+	private volatile long lastEnd = 0;
+
+	/**
+	 * @param expected - the amount of auctions the load test starts
+	 */
+	public LoadMetrics(int expected) {
+		finished = new CountDownLatch(expected);
+		latencies = new long[expected];
+	}
+
+	public void write(AuctionEvent event) {
+		String conversationId = event.getConversationId();
+		if (conversationId == null) {
+			return;
+		}
+
+		Auction auction = auctions.get(conversationId);
+		switch (event.getType()) {
+		case AUCTION_STARTED:
+			auction = new Auction(event.getTimestamp());
+			auction.messages = event.getCount();
+			auctions.put(conversationId, auction);
+			if (firstStart == 0) {
+				firstStart = event.getTimestamp();
+			}
+			break;
+		case ROUND_CLOSED:
+			if (auction != null) {
+				auction.messages += event.getCount();
+			}
+			break;
+		case BID_RECEIVED:
+		case BID_REFUSED:
+		case RESPONDER_FAILED:
+		case JOB_ACCEPTED:
+		case JOB_REJECTED:
+			if (auction != null) {
+				auction.messages++;
+			}
+			break;
+		case AWARDED:
+			if (auction != null) {
+				auction.messages++;
+				awarded++;
+				finish(auction, event);
+			}
+			break;
+		case NOT_AWARDED:
+			if (auction == null) {
+				// The auction never started, e.g. as there were no carriers
+				auction = new Auction(event.getTimestamp());
+				auctions.put(conversationId, auction);
+				if (firstStart == 0) {
+					firstStart = event.getTimestamp();
+				}
+			}
+			finish(auction, event);
+			break;
+		default:
+			break;
+		}
+	}
+
+	public void flush() {
+	}
+
+	/**
+	 * Records the latency and rounds of an auction which is over. The auction itself is kept,
+	 * such that messages which are logged after the award (e.g. a late REJECT_PROPOSAL) are still counted.
+	 */
+	private void finish(Auction auction, AuctionEvent event) {
+		if (auction.finished || completed >= latencies.length) {
+			return;
+		}
+		auction.finished = true;
+		latencies[completed] = event.getTimestamp() - auction.start;
+		rounds += Math.max(1, event.getRound());
+		lastEnd = event.getTimestamp();
+		completed++;
+		finished.countDown();
+	}
+
+	/**
+	 * Waits until the expected amount of auctions are over.
+	 * @param timeout - the longest time to wait, in milliseconds
+	 * @return - true if every auction is over
+	 */
+	public boolean await(long timeout) {
+		try {
+			return finished.await(timeout, TimeUnit.MILLISECONDS);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			return false;
+		}
+	}
+
+	private long countMessages() {
+		long total = 0;
+		for (Auction auction : auctions.values()) {
+			total += auction.messages;
+		}
+		return total;
+	}
+
+	/**
+	 * Returns a summary of the load test.
+	 * It should be called after the sink is removed from the log, and the log is flushed, such that the writer thread is done with it.
+	 * @return - ^
+	 */
+	public String report() {
+		int count = completed;
+		long[] sorted = Arrays.copyOf(latencies, count);
+		Arrays.sort(sorted);
+		long messages = countMessages();
+		long elapsed = Math.max(1, lastEnd - firstStart);
+
+		StringBuilder report = new StringBuilder();
+		report.append("Auctions completed: ").append(count).append(" (").append(awarded).append(" awarded)\n");
+		report.append(String.format("Throughput: %.2f auctions/sec over %d ms%n", count * 1000.0 / elapsed, elapsed));
+		if (count > 0) {
+			report.append(String.format("Rounds per auction: %.2f%n", (double) rounds / count));
+			report.append(String.format("Messages per auction: %.2f%n", (double) messages / count));
+			report.append("Latency (ms, start to award): p50=").append(percentile(sorted, 0.50))
+					.append(" p90=").append(percentile(sorted, 0.90))
+					.append(" p99=").append(percentile(sorted, 0.99))
+					.append(" max=").append(sorted[count - 1]).append("\n");
+		}
+		return report.toString();
+	}
+
+	private static long percentile(long[] sorted, double percentile) {
+		return sorted[Math.min(sorted.length - 1, (int) Math.ceil(sorted.length * percentile) - 1)];
+	}
+
+	private static final class Auction {
+		private final long start;
+		private long messages;
+		private boolean finished = false;
+
+		private Auction(long start) {
+			this.start = start;
+		}
+	}
+}
@@ -0,0 +1,91 @@
+package no.hib.mod252;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A histogram of non-negative values (e.g. latencies), in the style of HdrHistogram.
+ * Values below 128 are counted exactly, while larger values share a bucket with values within about 1.5% of them,
+ * so the whole range of a long fits in a few thousand buckets.
+ *
+ * Recording a value is a few arithmetic operations and an atomic increment, without locks or allocation,
+ * hence many threads can record at the same time. Reading the percentiles is a scan over the buckets, and is meant for the occasional reader (e.g. JMX).
+ */
+public final class MetricHistogram {
+	private static final int SUB_BITS = 6;
+	private static final int SUB = 1 << SUB_BITS;
+	private static final int BUCKETS = SUB * (64 - SUB_BITS + 1);
+
+	private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+	private final LongAdder count = new LongAdder();
+	private final LongAdder sum = new LongAdder();
+	private final AtomicLong max = new AtomicLong();
+
+	/**
+	 * Records a value. Negative values are recorded as 0.
+	 * @param value - ^
+	 */
+	public void record(long value) {
+		if (value < 0) {
+			value = 0;
+		}
+		counts.incrementAndGet(index(value));
+		count.increment();
+		sum.add(value);
+		if (value > max.get()) {
+			max.accumulateAndGet(value, Math::max);
+		}
+	}
+
+	public long getCount() {
+		return count.sum();
+	}
+
+	public long getMax() {
+		return max.get();
+	}
+
+	public double getMean() {
+		long n = count.sum();
+		return n == 0 ? 0 : (double) sum.sum() / n;
+	}
+
+	/**
+	 * Returns a percentile of the recorded values.
+	 * @param percentile - between 0 and 1 (e.g. 0.99)
+	 * @return - the highest value of the bucket the percentile falls in (0 if nothing has been recorded)
+	 */
+	public long getPercentile(double percentile) {
+		long n = count.sum();
+		if (n == 0) {
+			return 0;
+		}
+		long rank = Math.max(1, (long) Math.ceil(n * percentile));
+		long seen = 0;
+		for (int i = 0; i < BUCKETS; i++) {
+			seen += counts.get(i);
+			if (seen >= rank) {
+				return Math.min(highest(i), max.get());
+			}
+		}
+		return max.get();
+	}
+
+	private static int index(long value) {
+		if (value < 2 * SUB) {
+			return (int) value;
+		}
+		int shift = 63 - Long.numberOfLeadingZeros(value) - SUB_BITS;
+		return SUB * shift + (int) (value >>> shift);
+	}
+
+	private static long highest(int index) {
+		if (index < 2 * SUB) {
+			return index;
+		}
+		int shift = index / SUB - 1;
+		long sub = index - (long) SUB * shift;
+		return ((sub + 1) << shift) - 1;
+	}
+}
@@ -0,0 +1,122 @@
+package no.hib.mod252;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * This class keeps the reservation state of a carrier for each of the auctions it takes part in, by conversation-id:
+ * the lowest amount the carrier goes to (its floor), its last bid and the round of it.
+ * The floor is worked out once, from the payment of the first CFP of the auction, so every job gets a floor of its own,
+ * and the following rounds only look it up.
+ *
+ * A reservation is released once its conversation ends (see CarrierAgent). Should a conversation never end properly,
+ * the least recently used reservations are dropped once there are more than the capacity, so the memory stays bounded.
+ * The instance is meant to be used by the behaviours of a single agent, and is therefore not thread safe.
+ *
+ * System properties:
+ * "carrier.reservations" - the largest amount of reservations a carrier keeps (default 1024)
+ */
+public class ReservationCache {
+	private final int percentage;
+	private final LinkedHashMap<String, Reservation> reservations;
+
+	/**
+	 * @param percentage - how low the carrier goes, based on the initial payment of a job
+	 */
+	public ReservationCache(int percentage) {
+		this(percentage, Integer.getInteger("carrier.reservations", 1024));
+	}
+
+	/**
+	 * @param percentage - how low the carrier goes, based on the initial payment of a job
+	 * @param capacity - the largest amount of reservations kept
+	 */
+	public ReservationCache(int percentage, final int capacity) {
+		this.percentage = percentage;
+		this.reservations = new LinkedHashMap<String, Reservation>(16, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+
+			protected boolean removeEldestEntry(Map.Entry<String, Reservation> eldest) {
+				return size() > Math.max(1, capacity);
+			}
+		};
+	}
+
+	/**
+	 * Returns the reservation of an auction, and opens it if it's the first CFP of the auction.
+	 * @param conversationId - the conversation-id of the auction
+	 * @param payment - the payment of the CFP (in cents), which sets the floor of a new reservation
+	 * @return - ^
+	 */
+	public Reservation get(String conversationId, long payment) {
+		Reservation reservation = reservations.get(conversationId);
+		if (reservation == null) {
+			reservation = new Reservation(payment * percentage / 100);
+			reservations.put(conversationId, reservation);
+		}
+		return reservation;
+	}
+
+	/**
+	 * Releases the reservation of an auction which has ended.
+	 * @param conversationId - the conversation-id of the auction
+	 */
+	public void release(String conversationId) {
+		reservations.remove(conversationId);
+	}
+
+	/**
+	 * Returns the amount of auctions with a reservation.
+	 * @return - ^
+	 */
+	public int size() {
+		return reservations.size();
+	}
+
+	/**
+	 * The reservation state of a single auction.
+	 */
+	public static final class Reservation {
+		private final long floor;
+		private long lastBid = 0;
+		private int round = 0;
+
+		private Reservation(long floor) {
+			this.floor = floor;
+		}
+
+		/**
+		 * Records a bid of the carrier.
+		 * @param amount - the amount in cents, 0 if the carrier didn't bid
+		 * @param round - the round of the bid
+		 */
+		public void bid(long amount, int round) {
+			this.lastBid = amount;
+			this.round = round;
+		}
+
+		/**
+		 * Returns the lowest amount the carrier goes to in the auction.
+		 * @return - ^ in cents
+		 */
+		public long getFloor() {
+			return floor;
+		}
+
+		/**
+		 * Returns the last bid of the carrier in the auction.
+		 * @return - ^ in cents, 0 if none
+		 */
+		public long getLastBid() {
+			return lastBid;
+		}
+
+		/**
+		 * Returns the round of the last bid.
+		 * @return - ^, 0 if none
+		 */
+		public int getRound() {
+			return round;
+		}
+	}
+}
@@ -0,0 +1,21 @@
+package no.hib.mod252;
+
+import java.util.SplittableRandom;
+
+/**
+ * This strategy stays in the auction for as long as possible. It undercuts the current payment as much as the
+ * random undercut could (see UndercutBid.maxStep), but never below the reservation price, and only forfeits once the payment has reached it.
+ */
+public final class ReservationPriceBid implements BiddingStrategy {
+
+	public long bid(long payment, long floor, int round, SplittableRandom random) {
+		if (payment <= floor + 1) {
+			return 0;
+		}
+		return Math.max(floor + 1, payment - BidCodec.cents(UndercutBid.maxStep(payment)));
+	}
+
+	public long maxUndercut(long payment) {
+		return BidCodec.cents(UndercutBid.maxStep(payment));
+	}
+}
@@ -0,0 +1,74 @@
+package no.hib.mod252;
+
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Vector;
+
+import jade.lang.acl.ACLMessage;
+
+/**
+ * This class reads the responses of a round in an iterated auction, and builds the CFPs of the next round in the same pass.
+ * Every responder has a CFP of its own which is reused in each round (the protocol sends a copy of it),
+ * and all of them share the content of the round, where the best proposal is filled in once every response is read.
+ * An instance belongs to a single auction.
+ */
+public class RoundBuilder {
+	private final HashMap<String, ACLMessage> cfps = new HashMap<String, ACLMessage>();
+	private final Vector<ACLMessage> nextCfps = new Vector<ACLMessage>();
+	private ACLMessage last = null;
+
+	/**
+	 * Reads the PROPOSE messages of a round, and prepares a CFP for each of their senders.
+	 * A PROPOSE whose price can't be read is passed over, like a REFUSE.
+	 * @param responses - the responses of the round
+	 * @param ceiling - the highest proposal (in cents) to consider, i.e. the best proposal if none are lower
+	 * @param content - the encoded content of the next round (see BidCodec), its amount is set to the best proposal
+	 * @param replyBy - the deadline of the next round
+	 * @return - the best (lowest) proposal in cents
+	 */
+	public long build(Vector<?> responses, long ceiling, byte[] content, Date replyBy) {
+		long bestProposal = ceiling;
+		last = null;
+		nextCfps.clear();
+
+		int size = responses.size();
+		for (int i = 0; i < size; i++) {
+			ACLMessage msg = (ACLMessage) responses.get(i);
+			if (msg.getPerformative() == ACLMessage.PROPOSE && BidCodec.isBid(msg.getByteSequenceContent())) {
+				long proposal = BidCodec.amount(msg.getByteSequenceContent());
+				if (proposal <= bestProposal) {
+					bestProposal = proposal;
+				}
+				last = cfps.get(msg.getSender().getName());
+				if (last == null) {
+					last = msg.createReply();
+					last.setPerformative(ACLMessage.CFP);
+					cfps.put(msg.getSender().getName(), last);
+				} else {
+					last.setInReplyTo(msg.getReplyWith());
+				}
+				last.setByteSequenceContent(content);
+				last.setReplyByDate(replyBy);
+				nextCfps.addElement(last);
+			}
+		}
+		BidCodec.setAmount(content, bestProposal);
+		return bestProposal;
+	}
+
+	/**
+	 * Returns the CFPs of the next round, one per proposer.
+	 * @return - ^ (reused by the next call to build)
+	 */
+	public Vector<ACLMessage> getCfps() {
+		return nextCfps;
+	}
+
+	/**
+	 * Returns the CFP prepared for the last proposer of the round.
+	 * @return - ^, or null if nobody proposed
+	 */
+	public ACLMessage getLast() {
+		return last;
+	}
+}
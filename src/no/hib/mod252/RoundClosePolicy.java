@@ -0,0 +1,68 @@
+package no.hib.mod252;
+
+/**
+ * This class decides whether a round of an iterated auction can be closed before every responder has answered.
+ * A round is closed early once enough proposals are in (the quorum), or once a proposal undercuts the payment
+ * by the largest step a bid of the carriers' strategy may take (see BiddingStrategy.maxUndercut), since no other proposal can beat it.
+ * A strategy without such a step (e.g. TruthfulBid) never closes a round this way.
+ * Either way, at least two proposals are needed, such that there is still competition in the next round.
+ *
+ * The responders who haven't answered when a round is closed don't take part in the next round.
+ * Both rules are disabled by default, in which case every round waits for all its responders (or the deadline).
+ * The proposals of a round are read from the bid history of the auction (see BidHistory). An instance belongs to a single auction.
+ *
+ * System properties:
+ * "auction.round.quorum" - the amount of proposals which closes a round (default 0, i.e. never)
+ * "auction.round.closeOnStep" - true to close a round once its best proposal can't be beaten (default false)
+ * "auction.round.strategy" - the bidding strategy of the carriers, which bounds their step (see BiddingStrategy.forName, default undercut)
+ */
+public class RoundClosePolicy {
+	private static final int MINIMUM_PROPOSALS = 2;
+
+	private final int quorum;
+	private final BiddingStrategy strategy;
+	private long unbeatable = Long.MIN_VALUE;
+
+	public RoundClosePolicy() {
+		this(BiddingStrategy.forName(System.getProperty("auction.round.strategy", "undercut")));
+	}
+
+	/**
+	 * @param strategy - the bidding strategy of the carriers
+	 */
+	public RoundClosePolicy(BiddingStrategy strategy) {
+		this(Integer.getInteger("auction.round.quorum", 0), Boolean.getBoolean("auction.round.closeOnStep"), strategy);
+	}
+
+	/**
+	 * @param quorum - the amount of proposals which closes a round, 0 to wait for every responder
+	 * @param closeOnStep - true to close a round once its best proposal can't be beaten
+	 * @param strategy - the bidding strategy of the carriers, null if unknown (which never closes a round on the step)
+	 */
+	public RoundClosePolicy(int quorum, boolean closeOnStep, BiddingStrategy strategy) {
+		this.quorum = quorum > 0 ? Math.max(MINIMUM_PROPOSALS, quorum) : 0;
+		this.strategy = closeOnStep ? strategy : null;
+	}
+
+	/**
+	 * Starts a new round.
+	 * @param payment - the payment of the round in cents
+	 */
+	public void open(long payment) {
+		long step = strategy == null ? 0 : strategy.maxUndercut(payment);
+		unbeatable = step > 0 ? payment - step : Long.MIN_VALUE;
+	}
+
+	/**
+	 * Decides on the proposals of the current round, once a proposal has been added to the history.
+	 * @param history - the bids of the auction, whose current round is the round opened last
+	 * @return - true if the round should be closed without waiting for the remaining responders
+	 */
+	public boolean propose(BidHistory history) {
+		int proposals = history.getRoundBids();
+		if (proposals < MINIMUM_PROPOSALS) {
+			return false;
+		}
+		return (quorum > 0 && proposals >= quorum) || history.getRoundBest() <= unbeatable;
+	}
+}
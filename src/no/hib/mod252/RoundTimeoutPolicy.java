@@ -0,0 +1,81 @@
+package no.hib.mod252;
+
+import java.util.Arrays;
+
+/**
+ * This class decides how long the responders of a round get to answer a CFP.
+ * It keeps the latest PROPOSE latencies (the time from a CFP is sent until a proposal arrives),
+ * and gives each round the 95th percentile of those, plus some headroom, bounded by a floor and a ceiling.
+ * Until anything has been observed, the ceiling is used.
+ *
+ * A round still closes as soon as every responder has answered, the deadline only limits how long slow responders are waited for.
+ * The instance is meant to be used by the behaviours of a single agent, and is therefore not thread safe.
+ *
+ * System properties:
+ * "auction.round.floor" - the shortest timeout in milliseconds (default 500)
+ * "auction.round.ceiling" - the longest timeout in milliseconds (default 10000)
+ */
+public class RoundTimeoutPolicy {
+	private static final int WINDOW = 256;
+	private static final double HEADROOM = 1.5;
+
+	private final long floor;
+	private final long ceiling;
+	private final long[] latencies = new long[WINDOW];
+	private final long[] sorted = new long[WINDOW];
+	private int samples = 0;
+	private int next = 0;
+	private long timeout;
+	private boolean changed = false;
+
+	public RoundTimeoutPolicy() {
+		this(Long.getLong("auction.round.floor", 500), Long.getLong("auction.round.ceiling", 10000));
+	}
+
+	/**
+	 * @param floor - the shortest timeout in milliseconds
+	 * @param ceiling - the longest timeout in milliseconds
+	 */
+	public RoundTimeoutPolicy(long floor, long ceiling) {
+		this.floor = floor;
+		this.ceiling = Math.max(floor, ceiling);
+		this.timeout = this.ceiling;
+	}
+
+	/**
+	 * Returns the deadline of a round which opens now.
+	 * @param now - the current time in milliseconds
+	 * @return - the time (in milliseconds) the responders must answer by
+	 */
+	public long replyBy(long now) {
+		return now + getTimeout();
+	}
+
+	/**
+	 * Records how long a responder took to send a proposal.
+	 * @param latency - the time in milliseconds from the CFP was sent until the PROPOSE arrived
+	 */
+	public void record(long latency) {
+		latencies[next] = latency;
+		next = (next + 1) % WINDOW;
+		if (samples < WINDOW) {
+			samples++;
+		}
+		changed = true;
+	}
+
+	/**
+	 * Returns the current timeout, i.e. the 95th percentile of the recorded latencies with some headroom.
+	 * @return - ^ in milliseconds
+	 */
+	public long getTimeout() {
+		if (changed) {
+			System.arraycopy(latencies, 0, sorted, 0, samples);
+			Arrays.sort(sorted, 0, samples);
+			long p95 = sorted[Math.min(samples - 1, (int) Math.ceil(samples * 0.95) - 1)];
+			timeout = Math.min(ceiling, Math.max(floor, (long) (p95 * HEADROOM)));
+			changed = false;
+		}
+		return timeout;
+	}
+}
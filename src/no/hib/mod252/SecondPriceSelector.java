@@ -0,0 +1,100 @@
+package no.hib.mod252;
+
+/**
+ * This class settles a sealed-bid second-price (Vickrey) auction for a job.
+ * The lowest bid wins, but the winner is paid the second-lowest bid, or the reserve (the starting payment) if nobody else bid.
+ *
+ * Bids are offered one at a time, and only the lowest and second-lowest bids are kept, so an auction
+ * of any size is settled in a single pass without allocating anything per bid.
+ * Equal bids are ordered by the name of the bidder, hence the outcome does not depend on the order the bids arrived in.
+ * An instance can be reused for another auction by calling reset.
+ */
+public class SecondPriceSelector {
+	private long reserve;
+	private int bids;
+	private int winner;
+	private String winnerName;
+	private long lowest;
+	private long secondLowest;
+
+	/**
+	 * @param reserve - the highest amount (in cents) the company is willing to pay
+	 */
+	public SecondPriceSelector(long reserve) {
+		reset(reserve);
+	}
+
+	/**
+	 * Forgets every bid, and prepares the selector for a new auction.
+	 * @param reserve - the highest amount (in cents) the company is willing to pay
+	 */
+	public void reset(long reserve) {
+		this.reserve = reserve;
+		bids = 0;
+		winner = -1;
+		winnerName = null;
+		lowest = Long.MAX_VALUE;
+		secondLowest = Long.MAX_VALUE;
+	}
+
+	/**
+	 * Offers a bid. Bids above the reserve are ignored.
+	 * @param index - the position of the bid (e.g. in the vector of responses), returned by getWinner
+	 * @param bidder - the name of the bidder, used to break ties
+	 * @param amount - the bid in cents
+	 * @return - true if the bid is currently the winning bid
+	 */
+	public boolean offer(int index, String bidder, long amount) {
+		if (amount > reserve) {
+			return false;
+		}
+		bids++;
+		if (winner < 0 || amount < lowest || (amount == lowest && bidder.compareTo(winnerName) < 0)) {
+			secondLowest = lowest;
+			lowest = amount;
+			winner = index;
+			winnerName = bidder;
+			return true;
+		}
+		if (amount < secondLowest) {
+			secondLowest = amount;
+		}
+		return false;
+	}
+
+	/**
+	 * Returns the amount of bids taken into account (i.e. at or below the reserve).
+	 * @return - ^
+	 */
+	public int getBids() {
+		return bids;
+	}
+
+	/**
+	 * Returns the index of the winning bid.
+	 * @return - ^, or -1 if there are no bids
+	 */
+	public int getWinner() {
+		return winner;
+	}
+
+	public String getWinnerName() {
+		return winnerName;
+	}
+
+	/**
+	 * Returns the lowest bid.
+	 * @return - ^ in cents (Long.MAX_VALUE if there are no bids)
+	 */
+	public long getLowest() {
+		return lowest;
+	}
+
+	/**
+	 * Returns the amount the winner is paid: the second-lowest bid, or the reserve if there was only one bid.
+	 * @return - ^ in cents
+	 */
+	public long getClearingPrice() {
+		return bids < 2 ? reserve : secondLowest;
+	}
+}
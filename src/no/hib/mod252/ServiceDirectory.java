@@ -0,0 +1,273 @@
+package no.hib.mod252;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+import jade.core.AID;
+import jade.core.Agent;
+import jade.lang.acl.ACLMessage;
+import jade.proto.SubscriptionInitiator;
+import jade.domain.DFService;
+import jade.domain.FIPAException;
+import jade.domain.FIPAAgentManagement.Property;
+import jade.domain.FIPAAgentManagement.SearchConstraints;
+import jade.domain.FIPAAgentManagement.ServiceDescription;
+import jade.domain.FIPAAgentManagement.DFAgentDescription;
+
+/**
+ * A local copy of the agents offering a certain service.
+ * The copy is kept up to date by a subscription to the Directory Facilitator, which notifies
+ * the subscriber whenever an agent with the service registers, modifies or de-registers.
+ * Reading the directory is therefore an in-memory operation without any round-trip to the DF.
+ *
+ * The agents are grouped by the shard they registered with (see ShardPartitioner), such that a company
+ * only gets the agents of its own shards. The agents of a company are worked out once per change of the directory.
+ * An agent which has marked itself as saturated (see AdmissionControl) is left out until it lifts the mark.
+ */
+public final class ServiceDirectory {
+	private static final AID[] EMPTY = new AID[0];
+
+	private final String service;
+	private final LinkedHashMap<String, AID> members = new LinkedHashMap<String, AID>();
+	private final LinkedHashMap<String, String> shards = new LinkedHashMap<String, String>();
+	private final HashSet<String> saturated = new HashSet<String>();
+	private volatile Snapshot snapshot = new Snapshot(EMPTY, new String[0], new AID[0][]);
+	private volatile Agent owner = null;
+	private boolean initialised = false;
+
+	public ServiceDirectory(String service) {
+		this.service = service;
+	}
+
+	/**
+	 * Seeds the directory and subscribes to the DF on behalf of the given agent.
+	 * The notifications are handled by a behaviour of that agent, so the subscription lives as long as the agent does.
+	 * @param agent - the agent owning the subscription
+	 * @param seed - the agents found by a regular search (may be null)
+	 */
+	void subscribe(Agent agent, DFAgentDescription[] seed) {
+		synchronized (this) {
+			members.clear();
+			shards.clear();
+			saturated.clear();
+			initialised = false;
+			if (seed != null) {
+				for (DFAgentDescription member : seed) {
+					put(member);
+				}
+			}
+			publish();
+		}
+		owner = agent;
+
+		DFAgentDescription template = new DFAgentDescription();
+		ServiceDescription serviceDescription = new ServiceDescription();
+		serviceDescription.setType(service);
+		template.addServices(serviceDescription);
+
+		SearchConstraints findAll = new SearchConstraints();
+		findAll.setMaxResults(Long.valueOf(-1));
+
+		ACLMessage subscription = DFService.createSubscriptionMessage(agent, agent.getDefaultDF(), template, findAll);
+		agent.addBehaviour(new SubscriptionInitiator(agent, subscription) {
+			private static final long serialVersionUID = 1L;
+
+			/**
+			 * The first notification holds every matching agent, the following ones only hold the changes.
+			 */
+			protected void handleInform(ACLMessage inform) {
+				try {
+					apply(DFService.decodeNotification(inform.getContent()));
+				} catch (FIPAException e) {
+					e.printStackTrace();
+				}
+			}
+		});
+	}
+
+	/**
+	 * Applies a notification from the DF to the directory.
+	 * @param notification - the descriptions of the agents which changed
+	 */
+	synchronized void apply(DFAgentDescription[] notification) {
+		if (!initialised) {
+			members.clear();
+			shards.clear();
+			saturated.clear();
+			initialised = true;
+		}
+		for (DFAgentDescription description : notification) {
+			if (provides(description)) {
+				put(description);
+			} else {
+				String name = description.getName().getName();
+				members.remove(name);
+				shards.remove(name);
+				saturated.remove(name);
+			}
+		}
+		publish();
+	}
+
+	/**
+	 * Forgets the owner of the subscription, such that the next lookup subscribes again.
+	 */
+	void release() {
+		owner = null;
+	}
+
+	/**
+	 * Returns the agent owning the subscription.
+	 * @return - ^ (null if there's no subscription)
+	 */
+	public Agent getOwner() {
+		return owner;
+	}
+
+	/**
+	 * Returns the agents currently offering the service.
+	 * The array is shared between all callers, and must not be modified.
+	 * @return - ^
+	 */
+	public AID[] getAgents() {
+		return snapshot.all;
+	}
+
+	/**
+	 * Returns the agents of the shards a company auctions to.
+	 * The array is shared between all callers, and must not be modified.
+	 * @param company - the name of the company
+	 * @param partitioner - picks the shards of the company
+	 * @return - ^
+	 */
+	public AID[] getAgents(String company, ShardPartitioner partitioner) {
+		Snapshot current = snapshot;
+		if (current.shards.length <= 1) {
+			return current.all;
+		}
+		AID[] agents = current.partitions.get(company);
+		if (agents == null) {
+			int[] picked = partitioner.select(company, current.shards);
+			if (picked.length == current.shards.length) {
+				agents = current.all;
+			} else {
+				ArrayList<AID> selected = new ArrayList<AID>();
+				for (int shard : picked) {
+					for (AID agent : current.byShard[shard]) {
+						selected.add(agent);
+					}
+				}
+				agents = selected.toArray(new AID[selected.size()]);
+			}
+			current.partitions.put(company, agents);
+		}
+		return agents;
+	}
+
+	/**
+	 * Returns the agents of a single shard.
+	 * The array is shared between all callers, and must not be modified.
+	 * @param shard - the name of the shard
+	 * @return - ^ (empty if no agent of the shard offers the service)
+	 */
+	public AID[] getAgents(String shard) {
+		Snapshot current = snapshot;
+		int index = Arrays.binarySearch(current.shards, shard);
+		return index < 0 ? EMPTY : current.byShard[index];
+	}
+
+	/**
+	 * Returns the shards of the agents currently offering the service.
+	 * @return - ^ in alphabetical order
+	 */
+	public String[] getShards() {
+		return snapshot.shards.clone();
+	}
+
+	private void publish() {
+		TreeMap<String, ArrayList<AID>> grouped = new TreeMap<String, ArrayList<AID>>();
+		ArrayList<AID> all = new ArrayList<AID>(members.size());
+		for (AID member : members.values()) {
+			if (saturated.contains(member.getName())) {
+				continue;
+			}
+			all.add(member);
+			String shard = shards.get(member.getName());
+			ArrayList<AID> group = grouped.get(shard);
+			if (group == null) {
+				group = new ArrayList<AID>();
+				grouped.put(shard, group);
+			}
+			group.add(member);
+		}
+		AID[][] byShard = new AID[grouped.size()][];
+		int i = 0;
+		for (ArrayList<AID> group : grouped.values()) {
+			byShard[i++] = group.toArray(new AID[group.size()]);
+		}
+		snapshot = new Snapshot(all.toArray(new AID[all.size()]), grouped.keySet().toArray(new String[grouped.size()]), byShard);
+	}
+
+	/**
+	 * Adds (or updates) an agent offering the service, along with its shard and whether it's saturated.
+	 */
+	private void put(DFAgentDescription description) {
+		String name = description.getName().getName();
+		members.put(name, description.getName());
+		shards.put(name, property(description, ShardPartitioner.PROPERTY, ShardPartitioner.DEFAULT_SHARD));
+		if (Boolean.parseBoolean(property(description, DFHelper.SATURATED.getName(), "false"))) {
+			saturated.add(name);
+		} else {
+			saturated.remove(name);
+		}
+	}
+
+	/**
+	 * Returns a service property an agent registered with.
+	 */
+	private String property(DFAgentDescription description, String name, String defaultValue) {
+		Iterator<?> services = description.getAllServices();
+		while (services.hasNext()) {
+			ServiceDescription serviceDescription = (ServiceDescription) services.next();
+			Iterator<?> properties = serviceDescription.getAllProperties();
+			while (properties != null && properties.hasNext()) {
+				Property property = (Property) properties.next();
+				if (name.equals(property.getName())) {
+					return String.valueOf(property.getValue());
+				}
+			}
+		}
+		return defaultValue;
+	}
+
+	private boolean provides(DFAgentDescription description) {
+		Iterator<?> services = description.getAllServices();
+		while (services.hasNext()) {
+			if (service.equals(((ServiceDescription) services.next()).getType())) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * The agents of the directory at one point in time, in total and by shard, along with the agents of each company worked out so far.
+	 */
+	private static final class Snapshot {
+		private final AID[] all;
+		private final String[] shards;
+		private final AID[][] byShard;
+		private final ConcurrentHashMap<String, AID[]> partitions = new ConcurrentHashMap<String, AID[]>();
+
+		private Snapshot(AID[] all, String[] shards, AID[][] byShard) {
+			this.all = all;
+			this.shards = shards;
+			this.byShard = byShard;
+		}
+	}
+}
@@ -0,0 +1,72 @@
+package no.hib.mod252;
+
+import java.util.HashMap;
+
+import jade.core.Profile;
+import jade.core.ProfileImpl;
+import jade.core.Runtime;
+import jade.wrapper.AgentContainer;
+
+/**
+ * This class starts a shard of carriers: a JADE container in a JVM of its own, which joins the platform of a main container
+ * (e.g. the one started by LoadDriver), and starts its carriers there. The carriers register with the shard (see ShardPartitioner),
+ * so the companies only send their CFPs to the shards they're given. Several shards may run on the same machine, or on others.
+ *
+ * Arguments (Optional), as "key=value":
+ * "shard" - the name of the shard (default 1)
+ * "host" - the host of the main container (default localhost)
+ * "port" - the port of the main container (default 1099)
+ * "variant" - english (default), negotiation or vickrey
+ * "carriers" - the amount of carriers, named "Carrier-<shard>-1", "Carrier-<shard>-2" and so on (default 10)
+ * "percentage" - how low the carriers go, based on the initial payment (default 50)
+ * "strategy" - the bidding strategy of the carriers (see BiddingStrategy.forName, default undercut)
+ * "brokers" - the amount of brokers, named "Broker-<shard>-1" and so on, who split the carriers of the shard between them (see BrokerAgent, default 0)
+ *
+ * The container keeps running until the JVM is stopped.
+ */
+public class ShardLauncher {
+
+	public static void main(String[] args) throws Exception {
+		HashMap<String, String> options = new HashMap<String, String>();
+		for (String arg : args) {
+			int separator = arg.indexOf('=');
+			if (separator > 0) {
+				options.put(arg.substring(0, separator).trim(), arg.substring(separator + 1).trim());
+			}
+		}
+		String shard = option(options, "shard", "1");
+		String host = option(options, "host", "localhost");
+		int port = Integer.parseInt(option(options, "port", "1099"));
+		String variant = option(options, "variant", "english");
+		int carriers = Integer.parseInt(option(options, "carriers", "10"));
+		String percentage = option(options, "percentage", "50");
+		String strategy = option(options, "strategy", "undercut");
+		int brokers = Integer.parseInt(option(options, "brokers", "0"));
+
+		System.setProperty("auction.shard", shard);
+
+		Profile profile = new ProfileImpl(host, port, null, false);
+		profile.setParameter(Profile.CONTAINER_NAME, "Shard-" + shard);
+		profile.setParameter(Profile.GUI, "false");
+		AgentContainer container = Runtime.instance().createAgentContainer(profile);
+
+		String carrierClass = CarrierAgent.class.getName();
+		if (variant.equals("vickrey")) {
+			carrierClass = VickreyCarrierAgent.class.getName();
+		} else if (variant.equals("negotiation")) {
+			carrierClass = CarrierNegotiationAgent.class.getName();
+		}
+		for (int i = 1; i <= carriers; i++) {
+			container.createNewAgent("Carrier-" + shard + "-" + i, carrierClass, new Object[] { percentage, strategy }).start();
+		}
+		for (int i = 1; i <= brokers; i++) {
+			container.createNewAgent("Broker-" + shard + "-" + i, BrokerAgent.class.getName(), new Object[] { String.valueOf(i - 1), String.valueOf(brokers) }).start();
+		}
+		System.out.println("Shard " + shard + " started " + carriers + " carriers and " + brokers + " brokers, joined to " + host + ":" + port + ".");
+	}
+
+	private static String option(HashMap<String, String> options, String key, String defaultValue) {
+		String value = options.get(key);
+		return value == null ? defaultValue : value;
+	}
+}
@@ -0,0 +1,90 @@
+package no.hib.mod252;
+
+import java.util.Arrays;
+
+/**
+ * This class decides which shards of carriers a company auctions its jobs to, when the carriers are spread across several containers (or JVMs).
+ * Each agent registers with the shard of its JVM (see DFHelper.register), and each company is given a fixed amount of the shards (the fan-out),
+ * so the CFPs of a company only go to its own partitions, and the load is spread over the shards.
+ *
+ * The shards of a company are chosen by rendezvous hashing: the shards are ranked by a hash of the company's name and the shard,
+ * and the highest ranked ones are taken. Every JVM thereby picks the same shards for a company without talking to each other,
+ * and a shard which joins or leaves only moves the companies which rank it highest.
+ *
+ * System properties:
+ * "auction.shard" - the shard of the agents in this JVM (default "0")
+ * "auction.shards.fanout" - the amount of shards each company auctions to (default 0, i.e. every shard)
+ */
+public final class ShardPartitioner {
+	/**
+	 * The name of the service property which holds the shard of an agent.
+	 */
+	public static final String PROPERTY = "shard";
+
+	/**
+	 * The shard of an agent which didn't state one.
+	 */
+	public static final String DEFAULT_SHARD = "0";
+
+	private final int fanout;
+
+	public ShardPartitioner() {
+		this(Integer.getInteger("auction.shards.fanout", 0));
+	}
+
+	/**
+	 * @param fanout - the amount of shards each company auctions to, 0 for every shard
+	 */
+	public ShardPartitioner(int fanout) {
+		this.fanout = Math.max(0, fanout);
+	}
+
+	/**
+	 * Returns the shard of the agents in this JVM.
+	 * @return - ^
+	 */
+	public static String localShard() {
+		return System.getProperty("auction.shard", DEFAULT_SHARD);
+	}
+
+	/**
+	 * Picks the shards a company auctions to.
+	 * @param company - the name of the company
+	 * @param shards - every shard (not modified)
+	 * @return - the indices of the shards picked, in ascending order (every index if the fan-out covers every shard)
+	 */
+	public int[] select(String company, String[] shards) {
+		int count = fanout == 0 ? shards.length : Math.min(fanout, shards.length);
+		int[] picked = new int[count];
+		if (count == shards.length) {
+			for (int i = 0; i < count; i++) {
+				picked[i] = i;
+			}
+			return picked;
+		}
+
+		long[] ranks = new long[shards.length];
+		for (int i = 0; i < shards.length; i++) {
+			// The rank is the hash in the upper bits and the index in the lower bits, so sorting the ranks sorts the indices along
+			ranks[i] = (mix(company.hashCode() * 31L + shards[i].hashCode()) & 0xFFFFFFFF00000000L) | i;
+		}
+		Arrays.sort(ranks);
+		for (int i = 0; i < count; i++) {
+			picked[i] = (int) ranks[ranks.length - 1 - i];
+		}
+		Arrays.sort(picked);
+		return picked;
+	}
+
+	/**
+	 * Scrambles the bits of a value (the finalizer of MurmurHash3).
+	 */
+	private static long mix(long value) {
+		value ^= value >>> 33;
+		value *= 0xff51afd7ed558ccdL;
+		value ^= value >>> 33;
+		value *= 0xc4ceb9fe1a85ec53L;
+		value ^= value >>> 33;
+		return value;
+	}
+}
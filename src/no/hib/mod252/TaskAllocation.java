@@ -0,0 +1,202 @@
+package no.hib.mod252;
+
+/**
+ * This class allocates the tasks of a delegated job between the employees of a carrier, such that the total cost is as low as possible.
+ * Each employee has a cost for each task, and may take on a limited amount of tasks (its capacity).
+ *
+ * Starting from a default deal, the employees trade tasks with each other, either by handing a task over (transfer),
+ * or by trading one task for another (swap), as long as a deal lowers the total cost. The negotiation ends once no deal does,
+ * i.e. the allocation is stable under single transfers and swaps.
+ *
+ * The allocation keeps the load of each employee and the total cost, so the change a deal makes to the total cost
+ * is computed in constant time, from the costs of the tasks involved only. A pass over every transfer and swap is thereby
+ * in the order of tasks x employees + tasks x tasks, which takes milliseconds for hundreds of tasks across dozens of employees.
+ *
+ * An instance is used by a single agent (the mediator of the negotiation), so it's not thread safe.
+ */
+public final class TaskAllocation {
+	private final long[][] costs;
+	private final int[] capacities;
+	private final int[] assignment;
+	private final int[] loads;
+	private final int tasks;
+	private long totalCost = 0;
+	private int transfers = 0;
+	private int swaps = 0;
+
+	/**
+	 * Starts with the default deal, where the tasks are dealt out in turn to the employees with room for them.
+	 * If there isn't room for every task, the remaining tasks are dealt out in turn regardless.
+	 * @param costs - the cost of each task for each employee, as costs[employee][task]
+	 * @param capacities - the largest amount of tasks of each employee, 0 for no limit
+	 */
+	public TaskAllocation(long[][] costs, int[] capacities) {
+		this.costs = costs;
+		this.tasks = costs.length == 0 ? 0 : costs[0].length;
+		this.capacities = new int[costs.length];
+		this.assignment = new int[tasks];
+		this.loads = new int[costs.length];
+		for (int e = 0; e < costs.length; e++) {
+			this.capacities[e] = capacities[e] > 0 ? capacities[e] : Integer.MAX_VALUE;
+		}
+
+		int next = 0;
+		for (int t = 0; t < tasks; t++) {
+			int employee = next;
+			for (int i = 0; i < costs.length && loads[employee] >= this.capacities[employee]; i++) {
+				employee = (employee + 1) % costs.length;
+			}
+			assign(t, employee);
+			next = (employee + 1) % costs.length;
+		}
+	}
+
+	/**
+	 * Applies every deal which lowers the total cost, until none is left. For each task, the best transfer is taken,
+	 * and then the swaps of the task with every other task are tried, in passes over the tasks until a pass makes no deal.
+	 * Each deal lowers the total cost, so the negotiation always ends.
+	 * @return - the amount of deals made
+	 */
+	public int negotiate() {
+		int deals = 0;
+		boolean improved = true;
+		while (improved) {
+			improved = false;
+			for (int t = 0; t < tasks; t++) {
+				int best = -1;
+				long bestDelta = 0;
+				for (int e = 0; e < costs.length; e++) {
+					long delta = transferDelta(t, e);
+					if (delta < bestDelta) {
+						best = e;
+						bestDelta = delta;
+					}
+				}
+				if (best >= 0) {
+					transfer(t, best);
+					deals++;
+					improved = true;
+				}
+
+				for (int other = t + 1; other < tasks; other++) {
+					if (swapDelta(t, other) < 0) {
+						swap(t, other);
+						deals++;
+						improved = true;
+					}
+				}
+			}
+		}
+		return deals;
+	}
+
+	/**
+	 * Returns how much handing a task over to another employee would change the total cost.
+	 * @param task - the task
+	 * @param employee - the employee who'd take the task
+	 * @return - ^ (0 if the employee has the task already, Long.MAX_VALUE if the employee has no room for it)
+	 */
+	public long transferDelta(int task, int employee) {
+		int owner = assignment[task];
+		if (owner == employee) {
+			return 0;
+		}
+		if (loads[employee] >= capacities[employee]) {
+			return Long.MAX_VALUE;
+		}
+		return costs[employee][task] - costs[owner][task];
+	}
+
+	/**
+	 * Returns how much trading two tasks between their employees would change the total cost.
+	 * @param task - a task
+	 * @param other - another task
+	 * @return - ^ (0 if both tasks belong to the same employee)
+	 */
+	public long swapDelta(int task, int other) {
+		int owner = assignment[task];
+		int otherOwner = assignment[other];
+		if (owner == otherOwner) {
+			return 0;
+		}
+		return costs[otherOwner][task] + costs[owner][other] - costs[owner][task] - costs[otherOwner][other];
+	}
+
+	/**
+	 * Hands a task over to another employee, regardless of the cost.
+	 * @param task - the task
+	 * @param employee - the employee who takes the task
+	 */
+	public void transfer(int task, int employee) {
+		totalCost += transferDelta(task, employee);
+		loads[assignment[task]]--;
+		loads[employee]++;
+		assignment[task] = employee;
+		transfers++;
+	}
+
+	/**
+	 * Trades two tasks between their employees, regardless of the cost.
+	 * @param task - a task
+	 * @param other - another task
+	 */
+	public void swap(int task, int other) {
+		totalCost += swapDelta(task, other);
+		int owner = assignment[task];
+		assignment[task] = assignment[other];
+		assignment[other] = owner;
+		swaps++;
+	}
+
+	/**
+	 * Returns the employee a task is allocated to.
+	 * @param task - the task
+	 * @return - the index of the employee
+	 */
+	public int getEmployee(int task) {
+		return assignment[task];
+	}
+
+	/**
+	 * Returns the tasks allocated to an employee.
+	 * @param employee - the index of the employee
+	 * @return - the tasks in ascending order
+	 */
+	public int[] getTasks(int employee) {
+		int[] owned = new int[loads[employee]];
+		int i = 0;
+		for (int t = 0; t < tasks; t++) {
+			if (assignment[t] == employee) {
+				owned[i++] = t;
+			}
+		}
+		return owned;
+	}
+
+	public long getTotalCost() {
+		return totalCost;
+	}
+
+	public int getTransfers() {
+		return transfers;
+	}
+
+	public int getSwaps() {
+		return swaps;
+	}
+
+	/**
+	 * Returns the name of a task: a, b, c, ... for the first 26 tasks, and t26, t27, ... after that.
+	 * @param task - the task
+	 * @return - ^
+	 */
+	public static String taskName(int task) {
+		return task < 26 ? String.valueOf((char) ('a' + task)) : "t" + task;
+	}
+
+	private void assign(int task, int employee) {
+		assignment[task] = employee;
+		loads[employee]++;
+		totalCost += costs[employee][task];
+	}
+}
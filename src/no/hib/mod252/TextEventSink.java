@@ -0,0 +1,83 @@
+package no.hib.mod252;
+
+import java.io.IOException;
+import java.io.Writer;
+
+/**
+ * This class writes auction events as readable lines, e.g. to the console or a file.
+ */
+public class TextEventSink implements AuctionEventSink {
+	private final Writer out;
+	private final StringBuilder line = new StringBuilder(128);
+
+	public TextEventSink(Writer out) {
+		this.out = out;
+	}
+
+	public void write(AuctionEvent event) throws IOException {
+		line.setLength(0);
+		String source = event.getSource();
+		String detail = event.getDetail();
+
+		switch (event.getType()) {
+		case REGISTERED:
+			line.append(source).append(" registered as: ").append(detail).append('.');
+			break;
+		case DEREGISTERED:
+			line.append(source).append(" left.");
+			break;
+		case JOB_ISSUED:
+			line.append(source).append(" has issued a new job: \"").append(detail).append("\", starting at $")
+					.append(BidCodec.format(event.getAmount())).append('.');
+			break;
+		case AUCTION_STARTED:
+			line.append(source).append(" is issuing CFP's for the job: \"").append(detail).append("\" to ")
+					.append(event.getCount()).append(" carriers, starting at $").append(BidCodec.format(event.getAmount())).append('.');
+			break;
+		case BID_RECEIVED:
+			line.append(source).append(" proposes $").append(BidCodec.format(event.getAmount())).append(" in round ")
+					.append(event.getRound()).append('.');
+			break;
+		case BID_REFUSED:
+			line.append(source).append(" is not willing to bid any lower.");
+			break;
+		case RESPONDER_FAILED:
+			line.append(source).append(" failed to reply.");
+			break;
+		case RESPONDER_REMOVED:
+			line.append(source).append(" was removed from receivers.");
+			break;
+		case ROUND_CLOSED:
+			line.append(source).append(" closed round ").append(event.getRound()).append(": ").append(event.getCount())
+					.append(" carriers are still bidding, the best bid is $").append(BidCodec.format(event.getAmount())).append('.');
+			break;
+		case AWARDED:
+			line.append(source).append(" awarded the job to ").append(detail).append(" for $")
+					.append(BidCodec.format(event.getAmount())).append(" after ").append(event.getRound()).append(" round(s).");
+			break;
+		case NOT_AWARDED:
+			line.append(source).append(": No agent accepted the job.");
+			break;
+		case JOB_ACCEPTED:
+			line.append(source).append(" has accepted the job: \"").append(detail).append("\", and will receive $")
+					.append(BidCodec.format(event.getAmount())).append(" for completing it.");
+			break;
+		case JOB_REJECTED:
+			line.append(source).append(" lost the bidding.");
+			break;
+		default:
+			line.append(source).append(": ").append(detail);
+			break;
+		}
+
+		if (event.getConversationId() != null) {
+			line.append(" [").append(event.getConversationId()).append(']');
+		}
+		line.append(System.lineSeparator());
+		out.append(line);
+	}
+
+	public void flush() throws IOException {
+		out.flush();
+	}
+}
@@ -0,0 +1,17 @@
+package no.hib.mod252;
+
+import java.util.SplittableRandom;
+
+/**
+ * This strategy bids the reservation price right away.
+ * In a Vickrey auction the winner is paid the second-lowest bid (see SecondPriceSelector), so bidding the true cost is the best a carrier can do.
+ */
+public final class TruthfulBid implements BiddingStrategy {
+
+	public long bid(long payment, long floor, int round, SplittableRandom random) {
+		if (payment <= floor + 1) {
+			return 0;
+		}
+		return floor + 1;
+	}
+}
@@ -0,0 +1,43 @@
+package no.hib.mod252;
+
+import java.util.SplittableRandom;
+
+/**
+ * This strategy is the original bidding logic of the carriers in the English (iterated) auctions.
+ * A carrier undercuts the current payment by a random amount of whole dollars, which grows with the size of the payment,
+ * as long as the bid stays above its lower bound. Otherwise, it forfeits.
+ */
+public final class UndercutBid implements BiddingStrategy {
+
+	/**
+	 * Returns the largest amount of dollars a carrier may undercut a payment by.
+	 * @param payment - the current payment in cents
+	 * @return - ^
+	 */
+	public static int maxStep(long payment) {
+		long dollars = payment / 100;
+
+		if (dollars < 10) {
+			return 1;
+		} else if (dollars < 100) {
+			return 5;
+		} else if (dollars < 1000) {
+			return 50;
+		} else {
+			return 300;
+		}
+	}
+
+	public long bid(long payment, long floor, int round, SplittableRandom random) {
+		int randomNumber = random.nextInt(maxStep(payment)) + 1;
+
+		if (randomNumber != 1 && (payment - BidCodec.cents(randomNumber)) > floor) {
+			return payment - BidCodec.cents(randomNumber);
+		}
+		return 0;
+	}
+
+	public long maxUndercut(long payment) {
+		return BidCodec.cents(maxStep(payment));
+	}
+}
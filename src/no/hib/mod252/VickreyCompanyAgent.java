@@ -1,9 +1,7 @@
 package no.hib.mod252;
 
 import no.hib.mod252.DFHelper;
-import java.util.ArrayList;
 import java.util.Date;
-import java.util.Enumeration;
 import java.util.Hashtable;
 import java.util.Vector;
 
@@ -20,17 +18,27 @@ import jade.domain.FIPAAgentManagement.ServiceDescription;
  * Its role is to handle incoming bids for an item (in this case, a job) the agent created.
  * The agent wants the lowest possible value, such that the agent pays the least amount possible in order to get a job done.
  * In a Vickrey auction, there's only one round, hence no iterated contract net protocol.
+ * The lowest bid wins, but the winner is paid the second-lowest bid (or the starting payment, if it was the only bid).
  * 
  * Arguments (Required): "Job Title (String), Payment (Integer)"
  * The first argument is the title of the job, while the second argument is the starting payment for the job.
+ *
+ * System properties:
+ * "auction.award.timeout" - how long (in milliseconds) the winner has to confirm the job (default 30000)
  */
 public class VickreyCompanyAgent extends Agent {
 	private static final long serialVersionUID = 1L;
-	private Hashtable<String, Integer> availableJobs;
+	private final long awardTimeout = Long.getLong("auction.award.timeout", 30000);
+	private Hashtable<String, Long> availableJobs;
 	private DFHelper helper;
+	private AuctionLog log;
+	private RoundTimeoutPolicy roundTimeouts;
+	private AuctionMetrics metrics;
 	private String jobTitle = null;
 	private String payment = null;
-	private int initialPayment;
+	private long initialPayment;
+	private long jobId;
+	private byte[] title;
 
 	/**
 	 * Registers the agent with the Directory Facilitator as a Company, 
@@ -39,7 +47,10 @@ public class VickreyCompanyAgent extends Agent {
 	@Override
 	protected void setup() {
 		helper = DFHelper.getInstance();
-		availableJobs = new Hashtable<String, Integer>();
+		log = AuctionLog.getInstance();
+		roundTimeouts = new RoundTimeoutPolicy();
+		metrics = AuctionMetrics.getInstance();
+		availableJobs = new Hashtable<String, Long>();
 
 		Object[] args = getArguments();
 		if (args.length == 2) {
@@ -47,7 +58,9 @@ public class VickreyCompanyAgent extends Agent {
 			payment = (String) args[1];
 
 			if (payment.matches("^\\d+$")) {
-				initialPayment = Double.valueOf(payment).intValue();
+				initialPayment = BidCodec.cents(Long.parseLong(payment));
+				jobId = helper.newJobId();
+				title = BidCodec.encodeTitle(jobTitle);
 
 				updateJobListings(jobTitle, initialPayment);
 
@@ -56,19 +69,23 @@ public class VickreyCompanyAgent extends Agent {
 				serviceDescription.setName(getLocalName());
 				helper.register(this, serviceDescription);
 			} else {
-				System.out.println("Payment must be a positive number (e.g. 100).");
-				System.out.println("Terminating: " + this.getAID().getName());
+				log.warning(getAID().getName(), "Payment must be a positive number (e.g. 100). Terminating.");
 				doDelete();
 			}
 		} else {
-			System.out.println("Two arguments required. Please provide arguments in the format \"Job Title, Payment\", where Payment is a number (e.g. 100).");
-			System.out.println("Terminating: " + this.getAID().getName());
+			log.warning(getAID().getName(), "Two arguments required. Please provide arguments in the format \"Job Title, Payment\", where Payment is a number (e.g. 100). Terminating.");
 			doDelete();
 		}
 
 		addBehaviour(new ContractNetInitiator(this, null) {
 			private static final long serialVersionUID = 1L;
 			private int globalResponses = 0;
+			private String conversationId = null;
+			private int round = 1;
+			private long awarded = 0;
+			private boolean informed = false;
+			private long roundOpened = 0;
+			private final SecondPriceSelector selector = new SecondPriceSelector(initialPayment);
 
 			/**
 			 * Is initiated on startup, and sends a CFP message to agents listed as the type "Carrier".
@@ -78,126 +95,160 @@ public class VickreyCompanyAgent extends Agent {
 				init = new ACLMessage(ACLMessage.CFP);
 				Vector<ACLMessage> messages = new Vector<ACLMessage>();
 
-				AID[] agents = helper.searchDF(getAgent(), "Carrier");
+				AID[] agents = helper.lookup(getAgent(), "Carrier");
 
-				System.out.println("The Directory Facilitator found the following agents labeled as \"Carrier\": ");
 				for (AID agent : agents) {
-					System.out.println(agent.getName());
-					init.addReceiver(new AID(agent.getLocalName(), AID.ISLOCALNAME));
+					init.addReceiver(agent);
 				}
-				System.out.println();
 
+				conversationId = helper.newConversationId(getAgent());
 				if (agents.length == 0) {
-					System.out.println("No agents matching the type were found. Terminating: " + getAgent().getAID().getName());
+					log.warning(getAID().getName(), "No agents matching the type \"Carrier\" were found. Terminating.");
+					log.notAwarded(getAID().getName(), conversationId, 0);
 					helper.killAgent(getAgent());
 				} else {
+					helper.openAuction(conversationId, agents);
+
+					init.setConversationId(conversationId);
 					init.setProtocol(FIPANames.InteractionProtocol.FIPA_CONTRACT_NET);
-					init.setReplyByDate(new Date(System.currentTimeMillis() + 10000));
-					init.setContent(jobTitle + "|" + payment);
+					roundOpened = System.currentTimeMillis();
+					Date replyBy = new Date(roundTimeouts.replyBy(roundOpened));
+					init.setReplyByDate(replyBy);
+					byte[] content = BidCodec.encode(jobId, initialPayment, round, replyBy.getTime(), title);
+					BidCodec.setResponders(content, agents.length);
+					init.setByteSequenceContent(content);
 
 					messages.addElement(init);
+					log.auctionStarted(getAID().getName(), conversationId, jobTitle, initialPayment, agents.length);
+					metrics.auctionStarted();
 				}
 
 				return messages;
 			}
 
+			/**
+			 * A proposal whose price can't be read counts as a refusal.
+			 */
 			protected void handlePropose(ACLMessage propose, Vector v) {
-				System.out.println(propose.getSender().getName() + " proposed $" + propose.getContent() + " for the job: \"" + jobTitle + "\".");
+				if (!BidCodec.isBid(propose.getByteSequenceContent())) {
+					globalResponses++;
+					log.warning(getAID().getName(), "couldn't read the price proposed by " + propose.getSender().getName() + ".");
+					helper.removeReceiverAgent(propose.getSender(), propose);
+					return;
+				}
+				long latency = System.currentTimeMillis() - roundOpened;
+				roundTimeouts.record(latency);
+				metrics.bidReceived(latency);
+				log.bidReceived(propose.getSender().getName(), propose.getConversationId(), BidCodec.amount(propose.getByteSequenceContent()), round);
 			}
 
 			
 			protected void handleRefuse(ACLMessage refuse) {
 				globalResponses++;
-				System.out.println(refuse.getSender().getName() + " is not bidding for the job.");
+				log.bidRefused(refuse.getSender().getName(), refuse.getConversationId());
 				helper.removeReceiverAgent(refuse.getSender(), refuse);
 			}
 
 			
 			protected void handleFailure(ACLMessage failure) {
 				globalResponses++;
-				System.out.println(failure.getSender().getName() + " failed to reply.");
+				log.responderFailed(failure.getSender().getName(), failure.getConversationId());
 				helper.removeReceiverAgent(failure.getSender(), failure);
 			}
 
 			/**
 			 * Once a responder responds with INFORM, the initiator knows that the job
-			 * has been accepted, so all the agents whom took part in the auction can terminate.
+			 * has been accepted. The participants of the auction are released, while the company has no further jobs, and terminates.
 			 */
 			protected void handleInform(ACLMessage inform) {
 				globalResponses++;
-				System.out.println("\n" + getAID().getName() + " has no further jobs available.");
+				informed = true;
+				log.awarded(getAID().getName(), conversationId, inform.getSender().getName(), awarded, round);
+				metrics.auctionAwarded(round);
 				availableJobs.remove(jobTitle);
-				for (Agent agent : helper.getRegisteredAgents()) {
-					helper.killAgent(agent);
-				}
+				helper.releaseAuction(conversationId);
+				helper.killAgent(getAgent());
 			}
 
 			/**
-			 * Handles the responses from other responders, and sends a REJECT_PROPOSAL to all the agents, 
+			 * Handles the responses from the responders, and sends a REJECT_PROPOSAL to all the agents, 
 			 * except the agent with the lowest bid, which will receive an ACCEPT_PROPOSAL.
+			 * The ACCEPT_PROPOSAL carries the clearing price, i.e. the second-lowest bid (see SecondPriceSelector).
 			 */
 			protected void handleAllResponses(Vector responses, Vector acceptances) {
-				int agentsLeft = responses.size() - globalResponses;
+				long started = System.nanoTime();
 				globalResponses = 0;
+				selector.reset(initialPayment);
 
-				System.out.println("\n" + getAID().getName() + " is handling all: Received " + agentsLeft + " responses.");
-
-				ACLMessage reply = new ACLMessage(ACLMessage.REJECT_PROPOSAL);
-				Enumeration<?> e = responses.elements();
-				ArrayList<Integer> proposals = new ArrayList<Integer>();
-				ArrayList<AID> responders = new ArrayList<AID>();
-
-				while (e.hasMoreElements()) {
-					ACLMessage msg = (ACLMessage) e.nextElement();
-					if (msg.getPerformative() == ACLMessage.PROPOSE) {
-						responders.add(msg.getSender());
-						proposals.add(Integer.parseInt(msg.getContent()));
-						reply = msg.createReply();
-						reply.setPerformative(ACLMessage.REJECT_PROPOSAL);
-						acceptances.addElement(reply);
+				int size = responses.size();
+				for (int i = 0; i < size; i++) {
+					ACLMessage msg = (ACLMessage) responses.get(i);
+					if (msg.getPerformative() == ACLMessage.PROPOSE && BidCodec.isBid(msg.getByteSequenceContent())) {
+						selector.offer(i, msg.getSender().getName(), BidCodec.amount(msg.getByteSequenceContent()));
 					}
 				}
-				
-				if (responders.isEmpty() || proposals.isEmpty()) {
-					System.out.println("No agent accepted the job.");
+
+				if (selector.getWinner() < 0) {
+					log.notAwarded(getAID().getName(), conversationId, round);
+					metrics.auctionFailed(round);
+					helper.releaseAuction(conversationId);
 				} else {
-					int bestProposal = proposals.get(0);
-					AID bestProposer = responders.get(0);
-					reply = (ACLMessage) acceptances.get(0);
-					for (int i = 1; i < proposals.size(); i++) {
-						if (proposals.get(i) < bestProposal) {
-							bestProposal = proposals.get(i);
-							bestProposer = responders.get(i);
-							reply = (ACLMessage) acceptances.get(i);
-						}
-					}
-					
-					for (AID responder : responders) {
-						if (responder.equals(bestProposer)) {
+					awarded = selector.getClearingPrice();
+				}
+
+				for (int i = 0; i < size; i++) {
+					ACLMessage msg = (ACLMessage) responses.get(i);
+					if (msg.getPerformative() == ACLMessage.PROPOSE) {
+						ACLMessage reply = msg.createReply();
+						if (i == selector.getWinner()) {
 							reply.setPerformative(ACLMessage.ACCEPT_PROPOSAL);
-							reply.setContent(jobTitle + "|" + bestProposal);
+							reply.setByteSequenceContent(BidCodec.encode(jobId, awarded, round, 0, title));
+							reply.setReplyByDate(new Date(System.currentTimeMillis() + awardTimeout));
+						} else {
+							reply.setPerformative(ACLMessage.REJECT_PROPOSAL);
 						}
+						acceptances.addElement(reply);
 					}
 				}
+				metrics.roundClosed(System.nanoTime() - started);
+			}
+
+			/**
+			 * The auction is over. If the winner didn't confirm the job (it answered with a FAILURE, or not by the deadline),
+			 * the job is given up as not awarded, and the participants are released.
+			 */
+			protected void handleAllResultNotifications(Vector notifications) {
+				if (conversationId != null && awarded > 0 && !informed) {
+					log.notAwarded(getAID().getName(), conversationId, round);
+					metrics.auctionFailed(round);
+					helper.releaseAuction(conversationId);
+				}
 			}
 
 		});
 	}
 
+	/**
+	 * De-registers the agent, unless it has been de-registered already.
+	 */
+	protected void takeDown() {
+		helper.deregister(this);
+	}
+
 	/**
 	 * Adds a new job to a hashtable.
 	 * 
 	 * @param jobTitle - the title of the job
 	 * @param payment - the payment for the job
 	 */
-	public void updateJobListings(final String jobTitle, final int payment) {
+	public void updateJobListings(final String jobTitle, final long payment) {
 		addBehaviour(new OneShotBehaviour() {
 			private static final long serialVersionUID = 1L;
 
 			@Override
 			public void action() {
-				availableJobs.put(jobTitle, new Integer(payment));
-				System.out.println(getAID().getName() + " has issued a new job: \"" + jobTitle + "\", starting at $" + payment + ".\n");
+				availableJobs.put(jobTitle, Long.valueOf(payment));
+				log.jobIssued(getAID().getName(), jobTitle, payment);
 			}
 		});
 	}
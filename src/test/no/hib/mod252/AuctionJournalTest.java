@@ -0,0 +1,140 @@
+package no.hib.mod252;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class AuctionJournalTest {
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@Before
+	public void setUp() {
+		System.setProperty("auction.journal", folder.getRoot().getPath());
+	}
+
+	@After
+	public void tearDown() {
+		System.clearProperty("auction.journal");
+	}
+
+	@Test
+	public void noJournalWithoutTheProperty() {
+		System.clearProperty("auction.journal");
+
+		assertEquals(null, AuctionJournal.open("Company"));
+	}
+
+	@Test
+	public void replayResumesTheOpenJobs() {
+		AuctionJournal journal = AuctionJournal.open("Company");
+		assertTrue(journal.getOpenJobs().isEmpty());
+		journal.jobOpened(1, 10000, BidCodec.encodeTitle("Job A"));
+		journal.roundOpened(1, 1);
+		journal.roundOpened(1, 2);
+		journal.jobOpened(2, 5000, BidCodec.encodeTitle("Job B"));
+		journal.roundOpened(2, 1);
+		journal.accepted(2, 1, "Carrier1", 4000);
+		journal.closed(2);
+		journal.close();
+
+		// Twice, since the first replay compacts the journal
+		for (int i = 0; i < 2; i++) {
+			journal = AuctionJournal.open("Company");
+			List<AuctionJournal.OpenJob> jobs = journal.getOpenJobs();
+			journal.close();
+
+			assertEquals(1, jobs.size());
+			AuctionJournal.OpenJob job = jobs.get(0);
+			assertEquals(1, job.getId());
+			assertEquals("Job A", job.getTitle());
+			assertEquals(10000, job.getPayment());
+			assertEquals(2, job.getRound());
+			assertEquals(null, job.getWinner());
+		}
+	}
+
+	@Test
+	public void acceptedJobKeepsItsWinner() {
+		AuctionJournal journal = AuctionJournal.open("Company");
+		journal.jobOpened(1, 10000, BidCodec.encodeTitle("Job A"));
+		journal.roundOpened(1, 1);
+		journal.jobOpened(2, 5000, BidCodec.encodeTitle("Job B"));
+		journal.roundOpened(2, 1);
+		journal.roundOpened(2, 2);
+		journal.accepted(2, 2, "Carrier2", 4000);
+		journal.accepted(1, 1, "Carrier1", 9000);
+		journal.awarded(1, 1, "Carrier1", 9000);
+		journal.close();
+
+		// Twice, since the first replay compacts the journal
+		for (int i = 0; i < 2; i++) {
+			journal = AuctionJournal.open("Company");
+			List<AuctionJournal.OpenJob> jobs = journal.getOpenJobs();
+			journal.close();
+
+			assertEquals(1, jobs.size());
+			AuctionJournal.OpenJob job = jobs.get(0);
+			assertEquals(2, job.getId());
+			assertEquals(2, job.getRound());
+			assertEquals("Carrier2", job.getWinner());
+			assertEquals(4000, job.getAccepted());
+		}
+	}
+
+	@Test
+	public void replayStopsAtABadChecksum() throws IOException {
+		AuctionJournal journal = AuctionJournal.open("Company");
+		journal.jobOpened(1, 10000, BidCodec.encodeTitle("A"));
+		journal.jobOpened(2, 10000, BidCodec.encodeTitle("B"));
+		journal.jobOpened(3, 10000, BidCodec.encodeTitle("C"));
+		journal.close();
+
+		File file = new File(folder.getRoot(), "Company.journal");
+		try (RandomAccessFile corrupt = new RandomAccessFile(file, "rw")) {
+			int first = 4 + corrupt.readInt();
+			// The amount of the second record
+			corrupt.seek(first + 4 + 13);
+			corrupt.write(0x7F);
+		}
+
+		journal = AuctionJournal.open("Company");
+		List<AuctionJournal.OpenJob> jobs = journal.getOpenJobs();
+		journal.close();
+
+		assertEquals(1, jobs.size());
+		assertEquals(1, jobs.get(0).getId());
+		// The compacted journal holds the opening and the round of the first job only
+		assertEquals((4 + 25 + 1 + 4) + (4 + 25 + 4), file.length());
+	}
+
+	@Test
+	public void replayStopsAtATornRecord() throws IOException {
+		AuctionJournal journal = AuctionJournal.open("Company");
+		journal.jobOpened(1, 10000, BidCodec.encodeTitle("A"));
+		journal.jobOpened(2, 10000, BidCodec.encodeTitle("B"));
+		journal.close();
+
+		File file = new File(folder.getRoot(), "Company.journal");
+		try (RandomAccessFile torn = new RandomAccessFile(file, "rw")) {
+			torn.setLength(torn.length() - 3);
+		}
+
+		journal = AuctionJournal.open("Company");
+		List<AuctionJournal.OpenJob> jobs = journal.getOpenJobs();
+		journal.close();
+
+		assertEquals(1, jobs.size());
+		assertEquals(1, jobs.get(0).getId());
+	}
+}
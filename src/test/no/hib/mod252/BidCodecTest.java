@@ -0,0 +1,125 @@
+package no.hib.mod252;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class BidCodecTest {
+
+	@Test
+	public void bidRoundTrip() {
+		byte[] content = BidCodec.encode(42, 123456, 7, 1500000000000L, BidCodec.encodeTitle("Ærlig flytting"));
+		BidCodec.setResponders(content, 3);
+
+		assertTrue(BidCodec.isBid(content));
+		assertEquals(42, BidCodec.jobId(content));
+		assertEquals(123456, BidCodec.amount(content));
+		assertEquals(7, BidCodec.round(content));
+		assertEquals(1500000000000L, BidCodec.deadline(content));
+		assertEquals(3, BidCodec.responders(content));
+		assertEquals("Ærlig flytting", BidCodec.title(content));
+	}
+
+	@Test
+	public void bidWithoutTitle() {
+		byte[] content = BidCodec.encode(1, 100, 1, 0);
+
+		assertEquals(33, content.length);
+		assertEquals("", BidCodec.title(content));
+		assertEquals(0, BidCodec.responders(content));
+	}
+
+	@Test
+	public void bidOffsets() {
+		byte[] content = BidCodec.encode(0x0102030405060708L, 0x1112131415161718L, 0x21222324, 0x3132333435363738L, new byte[] {0x7F});
+		BidCodec.setResponders(content, 0x41424344);
+
+		assertEquals(BidCodec.BID, content[0]);
+		assertEquals(0x01, content[1]);
+		assertEquals(0x08, content[8]);
+		assertEquals(0x11, content[9]);
+		assertEquals(0x18, content[16]);
+		assertEquals(0x21, content[17]);
+		assertEquals(0x24, content[20]);
+		assertEquals(0x31, content[21]);
+		assertEquals(0x38, content[28]);
+		assertEquals(0x41, content[29]);
+		assertEquals(0x44, content[32]);
+		assertEquals(0x7F, content[33]);
+		assertEquals(34, content.length);
+	}
+
+	@Test
+	public void setAmountKeepsTheRest() {
+		byte[] content = BidCodec.encode(5, 1000, 2, 99, BidCodec.encodeTitle("Job"));
+		BidCodec.setAmount(content, 900);
+
+		assertEquals(900, BidCodec.amount(content));
+		assertEquals(5, BidCodec.jobId(content));
+		assertEquals(2, BidCodec.round(content));
+		assertEquals("Job", BidCodec.title(content));
+	}
+
+	@Test
+	public void unreadableContent() {
+		assertFalse(BidCodec.isBid(null));
+		assertFalse(BidCodec.isBid(new byte[32]));
+		assertFalse(BidCodec.isBid(BidCodec.newBatch(1, 1, 0)));
+		assertFalse(BidCodec.isBatch(BidCodec.encode(1, 100, 1, 0)));
+		assertFalse(BidCodec.isTasks(null));
+		assertFalse(BidCodec.isCosts(new byte[] {BidCodec.COSTS}));
+	}
+
+	@Test
+	public void batchRoundTrip() {
+		byte[] batch = BidCodec.newBatch(2, 3, 777);
+		BidCodec.setBatchEntry(batch, 0, 10, 5000);
+		BidCodec.setBatchEntry(batch, 1, 11, 6000);
+
+		assertTrue(BidCodec.isBatch(batch));
+		assertEquals(3, BidCodec.batchRound(batch));
+		assertEquals(777, BidCodec.batchDeadline(batch));
+		assertEquals(2, BidCodec.batchCount(batch));
+		assertEquals(11, BidCodec.batchJobId(batch, 1));
+		assertEquals(6000, BidCodec.batchAmount(batch, 1));
+
+		byte[] reply = BidCodec.newBatchReply(batch);
+		assertEquals(batch.length, reply.length);
+		assertEquals(10, BidCodec.batchJobId(reply, 0));
+		assertEquals(0, BidCodec.batchAmount(reply, 0));
+		assertEquals(3, BidCodec.batchRound(reply));
+	}
+
+	@Test
+	public void truncatedBatch() {
+		byte[] batch = BidCodec.newBatch(2, 1, 0);
+		byte[] truncated = new byte[batch.length - 1];
+		System.arraycopy(batch, 0, truncated, 0, truncated.length);
+
+		assertFalse(BidCodec.isBatch(truncated));
+	}
+
+	@Test
+	public void tasksAndCostsRoundTrip() {
+		byte[] tasks = BidCodec.encodeTasks(new int[] {4, 2});
+		assertTrue(BidCodec.isTasks(tasks));
+		assertEquals(2, BidCodec.taskCount(tasks));
+		assertEquals(2, BidCodec.task(tasks, 1));
+
+		byte[] costs = BidCodec.encodeCosts(3, new long[] {150, 250});
+		assertTrue(BidCodec.isCosts(costs));
+		assertEquals(3, BidCodec.costCapacity(costs));
+		assertEquals(2, BidCodec.costCount(costs));
+		assertEquals(250, BidCodec.cost(costs, 1));
+	}
+
+	@Test
+	public void format() {
+		assertEquals("120", BidCodec.format(12000));
+		assertEquals("120.50", BidCodec.format(12050));
+		assertEquals("120.05", BidCodec.format(12005));
+		assertEquals(12000, BidCodec.cents(120));
+	}
+}
@@ -0,0 +1,75 @@
+package no.hib.mod252;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+public class BidHistoryTest {
+
+	@Test
+	public void keepsTheBestBidOfEachRound() {
+		BidHistory history = new BidHistory();
+		history.openRound(1, 10000, 0);
+		history.bid("A", 9000, 10);
+		history.bid("B", 9500, 20);
+
+		assertEquals(1, history.getRound());
+		assertEquals(10000, history.getPayment());
+		assertEquals(9000, history.getRoundBest());
+		assertEquals(2, history.getRoundBids());
+
+		history.openRound(2, 9000, 100);
+		assertEquals(9000, history.getPayment());
+		assertEquals(9000, history.getRoundBest());
+		assertEquals(0, history.getRoundBids());
+
+		history.bid("A", 8500, 150);
+		assertEquals(8500, history.getBest());
+		assertEquals(8500, history.getLastBid("A"));
+		assertEquals(9500, history.getLastBid("B"));
+		assertEquals(0, history.getLastBid("C"));
+	}
+
+	@Test
+	public void recordsEveryBid() {
+		BidHistory history = new BidHistory();
+		history.openRound(1, 10000, 1000);
+		for (int i = 0; i < 100; i++) {
+			history.bid("Carrier" + (i % 20), 9000 - i, 1000 + i);
+		}
+		history.openRound(2, 8901, 1200);
+		history.bid("Carrier3", 8800, 1250);
+
+		assertEquals(101, history.size());
+		assertEquals(100, history.getBidCount(1));
+		assertEquals(1, history.getBidCount(2));
+		assertEquals(0, history.getBidCount(3));
+		assertEquals("Carrier3", history.getBidder(100));
+		assertEquals(2, history.getBidRound(100));
+		assertEquals(8800, history.getBidAmount(100));
+		assertEquals(250, history.getBidTime(100));
+		assertEquals(100 * 1000.0 / 200, history.getBidRate(1), 0.001);
+	}
+
+	@Test
+	public void resumedAuctionStartsAtItsRound() {
+		BidHistory history = new BidHistory();
+		history.openRound(5, 7000, 0);
+		history.openRound(6, 7000, 10);
+
+		assertEquals(6, history.getRound());
+		assertEquals(0, history.getBest());
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void roundsMustFollowEachOther() {
+		BidHistory history = new BidHistory();
+		history.openRound(1, 10000, 0);
+		history.openRound(3, 9000, 10);
+	}
+
+	@Test(expected = IllegalStateException.class)
+	public void bidNeedsAnOpenRound() {
+		new BidHistory().bid("A", 100, 0);
+	}
+}
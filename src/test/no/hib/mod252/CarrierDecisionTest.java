@@ -0,0 +1,42 @@
+package no.hib.mod252;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.SplittableRandom;
+
+import org.junit.Test;
+
+public class CarrierDecisionTest {
+
+	@Test
+	public void floorFollowsTheFirstPayment() {
+		ReservationCache reservations = new ReservationCache(50, 16);
+		CarrierDecision decision = new CarrierDecision(new TruthfulBid(), new SplittableRandom(1), reservations);
+
+		assertEquals(5001, decision.bid("auction-1", 10000, 1));
+		assertEquals(5001, decision.bid("auction-1", 8000, 2));
+		assertEquals(2, reservations.get("auction-1", 8000).getRound());
+		assertEquals(0, decision.bid("auction-1", 5000, 3));
+		assertEquals(0, reservations.get("auction-1", 5000).getLastBid());
+	}
+
+	@Test
+	public void onlyARefusalTakesThought() {
+		CarrierDecision decision = new CarrierDecision(new UndercutBid(), new SplittableRandom(1), new ReservationCache(50, 16));
+
+		assertEquals(0, decision.think(9000));
+		for (int i = 0; i < 100; i++) {
+			long think = decision.think(0);
+			assertTrue(think >= 1000 && think < 4000);
+		}
+	}
+
+	@Test
+	public void lastCarrierProposesThePayment() {
+		assertEquals(8000, CarrierDecision.reply(8000, 9000, 2));
+		assertEquals(0, CarrierDecision.reply(0, 9000, 2));
+		assertEquals(9000, CarrierDecision.reply(8000, 9000, 1));
+		assertEquals(9000, CarrierDecision.reply(0, 9000, 1));
+	}
+}
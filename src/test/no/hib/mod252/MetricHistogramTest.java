@@ -0,0 +1,66 @@
+package no.hib.mod252;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class MetricHistogramTest {
+
+	@Test
+	public void smallValuesAreExact() {
+		MetricHistogram histogram = new MetricHistogram();
+		for (int i = 1; i <= 100; i++) {
+			histogram.record(i);
+		}
+
+		assertEquals(100, histogram.getCount());
+		assertEquals(100, histogram.getMax());
+		assertEquals(50.5, histogram.getMean(), 0.001);
+		assertEquals(50, histogram.getPercentile(0.5));
+		assertEquals(90, histogram.getPercentile(0.9));
+		assertEquals(99, histogram.getPercentile(0.99));
+		assertEquals(1, histogram.getPercentile(0));
+	}
+
+	@Test
+	public void largeValuesAreWithinTheBucketWidth() {
+		MetricHistogram histogram = new MetricHistogram();
+		for (int i = 0; i < 900; i++) {
+			histogram.record(1000);
+		}
+		for (int i = 0; i < 100; i++) {
+			histogram.record(1000000);
+		}
+
+		long p50 = histogram.getPercentile(0.5);
+		assertTrue(p50 >= 1000 && p50 <= 1016);
+		assertEquals(1000000, histogram.getPercentile(0.99));
+		assertEquals(1000000, histogram.getMax());
+	}
+
+	@Test
+	public void percentileNeverExceedsTheMax() {
+		MetricHistogram histogram = new MetricHistogram();
+		histogram.record(1000);
+
+		assertEquals(1000, histogram.getPercentile(1));
+	}
+
+	@Test
+	public void negativeValuesCountAsZero() {
+		MetricHistogram histogram = new MetricHistogram();
+		histogram.record(-5);
+
+		assertEquals(1, histogram.getCount());
+		assertEquals(0, histogram.getPercentile(0.5));
+	}
+
+	@Test
+	public void emptyHistogram() {
+		MetricHistogram histogram = new MetricHistogram();
+
+		assertEquals(0, histogram.getPercentile(0.99));
+		assertEquals(0, histogram.getMean(), 0);
+	}
+}
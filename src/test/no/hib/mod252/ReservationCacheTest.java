@@ -0,0 +1,48 @@
+package no.hib.mod252;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+import org.junit.Test;
+
+public class ReservationCacheTest {
+
+	@Test
+	public void floorIsSetByTheFirstPayment() {
+		ReservationCache cache = new ReservationCache(50, 16);
+		ReservationCache.Reservation reservation = cache.get("auction-1", 10000);
+		reservation.bid(9000, 1);
+
+		assertEquals(5000, reservation.getFloor());
+		assertSame(reservation, cache.get("auction-1", 9000));
+		assertEquals(5000, cache.get("auction-1", 9000).getFloor());
+		assertEquals(9000, reservation.getLastBid());
+		assertEquals(1, reservation.getRound());
+	}
+
+	@Test
+	public void leastRecentlyUsedIsEvicted() {
+		ReservationCache cache = new ReservationCache(50, 2);
+		ReservationCache.Reservation first = cache.get("a", 10000);
+		ReservationCache.Reservation second = cache.get("b", 10000);
+		cache.get("a", 10000);
+		cache.get("c", 10000);
+
+		assertEquals(2, cache.size());
+		assertSame(first, cache.get("a", 10000));
+		assertNotSame(second, cache.get("b", 2000));
+		assertEquals(1000, cache.get("b", 2000).getFloor());
+	}
+
+	@Test
+	public void releaseDropsTheReservation() {
+		ReservationCache cache = new ReservationCache(50, 16);
+		cache.get("a", 10000).bid(8000, 2);
+		cache.release("a");
+
+		assertEquals(0, cache.size());
+		assertEquals(0, cache.get("a", 4000).getLastBid());
+		assertEquals(2000, cache.get("a", 4000).getFloor());
+	}
+}
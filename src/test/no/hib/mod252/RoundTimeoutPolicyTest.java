@@ -0,0 +1,58 @@
+package no.hib.mod252;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+public class RoundTimeoutPolicyTest {
+
+	@Test
+	public void ceilingUntilAnythingIsRecorded() {
+		RoundTimeoutPolicy policy = new RoundTimeoutPolicy(500, 10000);
+
+		assertEquals(10000, policy.getTimeout());
+		assertEquals(11000, policy.replyBy(1000));
+	}
+
+	@Test
+	public void percentileWithHeadroom() {
+		RoundTimeoutPolicy policy = new RoundTimeoutPolicy(500, 10000);
+		for (int i = 0; i < 95; i++) {
+			policy.record(1000);
+		}
+		for (int i = 0; i < 5; i++) {
+			policy.record(9000);
+		}
+
+		assertEquals(1500, policy.getTimeout());
+	}
+
+	@Test
+	public void boundedByTheFloorAndCeiling() {
+		RoundTimeoutPolicy fast = new RoundTimeoutPolicy(500, 10000);
+		fast.record(10);
+		RoundTimeoutPolicy slow = new RoundTimeoutPolicy(500, 10000);
+		slow.record(100000);
+
+		assertEquals(500, fast.getTimeout());
+		assertEquals(10000, slow.getTimeout());
+	}
+
+	@Test
+	public void forgetsTheOldestLatencies() {
+		RoundTimeoutPolicy policy = new RoundTimeoutPolicy(500, 10000);
+		for (int i = 0; i < 256; i++) {
+			policy.record(5000);
+		}
+		for (int i = 0; i < 256; i++) {
+			policy.record(2000);
+		}
+
+		assertEquals(3000, policy.getTimeout());
+	}
+
+	@Test
+	public void ceilingIsAtLeastTheFloor() {
+		assertEquals(800, new RoundTimeoutPolicy(800, 100).getTimeout());
+	}
+}
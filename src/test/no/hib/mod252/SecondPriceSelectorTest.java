@@ -0,0 +1,68 @@
+package no.hib.mod252;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class SecondPriceSelectorTest {
+
+	@Test
+	public void lowestWinsAndIsPaidTheSecondLowest() {
+		SecondPriceSelector selector = new SecondPriceSelector(10000);
+		selector.offer(0, "C", 9000);
+		selector.offer(1, "A", 7000);
+		selector.offer(2, "B", 8000);
+
+		assertEquals(1, selector.getWinner());
+		assertEquals("A", selector.getWinnerName());
+		assertEquals(7000, selector.getLowest());
+		assertEquals(8000, selector.getClearingPrice());
+		assertEquals(3, selector.getBids());
+	}
+
+	@Test
+	public void tieGoesToTheLowestName() {
+		SecondPriceSelector forward = new SecondPriceSelector(10000);
+		forward.offer(0, "A", 5000);
+		forward.offer(1, "B", 5000);
+
+		SecondPriceSelector backward = new SecondPriceSelector(10000);
+		backward.offer(0, "B", 5000);
+		backward.offer(1, "A", 5000);
+
+		assertEquals("A", forward.getWinnerName());
+		assertEquals("A", backward.getWinnerName());
+		assertEquals(5000, forward.getClearingPrice());
+		assertEquals(5000, backward.getClearingPrice());
+	}
+
+	@Test
+	public void singleBidIsPaidTheReserve() {
+		SecondPriceSelector selector = new SecondPriceSelector(10000);
+		assertTrue(selector.offer(0, "A", 6000));
+
+		assertEquals(10000, selector.getClearingPrice());
+	}
+
+	@Test
+	public void bidsAboveTheReserveAreIgnored() {
+		SecondPriceSelector selector = new SecondPriceSelector(10000);
+		assertFalse(selector.offer(0, "A", 10001));
+
+		assertEquals(-1, selector.getWinner());
+		assertEquals(0, selector.getBids());
+		assertEquals(Long.MAX_VALUE, selector.getLowest());
+	}
+
+	@Test
+	public void resetForgetsTheBids() {
+		SecondPriceSelector selector = new SecondPriceSelector(10000);
+		selector.offer(0, "A", 6000);
+		selector.reset(500);
+
+		assertEquals(-1, selector.getWinner());
+		assertEquals(500, selector.getClearingPrice());
+	}
+}
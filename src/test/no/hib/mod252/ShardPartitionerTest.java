@@ -0,0 +1,69 @@
+package no.hib.mod252;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+
+public class ShardPartitionerTest {
+	private static final String[] SHARDS = {"0", "1", "2", "3", "4", "5", "6", "7"};
+
+	@Test
+	public void everyShardWithoutFanout() {
+		assertArrayEquals(new int[] {0, 1, 2}, new ShardPartitioner(0).select("Company", new String[] {"a", "b", "c"}));
+		assertArrayEquals(new int[] {0, 1, 2}, new ShardPartitioner(5).select("Company", new String[] {"a", "b", "c"}));
+	}
+
+	@Test
+	public void picksTheFanoutInAscendingOrder() {
+		int[] picked = new ShardPartitioner(3).select("Company1", SHARDS);
+
+		assertEquals(3, picked.length);
+		assertTrue(picked[0] < picked[1] && picked[1] < picked[2]);
+		assertArrayEquals(picked, new ShardPartitioner(3).select("Company1", SHARDS));
+	}
+
+	@Test
+	public void spreadsTheCompanies() {
+		int[] load = new int[SHARDS.length];
+		ShardPartitioner partitioner = new ShardPartitioner(1);
+		for (int i = 0; i < 800; i++) {
+			load[partitioner.select("Company" + i, SHARDS)[0]]++;
+		}
+		for (int shard : load) {
+			assertTrue(Arrays.toString(load), shard > 50);
+		}
+	}
+
+	@Test
+	public void removingAnotherShardKeepsThePick() {
+		ShardPartitioner partitioner = new ShardPartitioner(2);
+		for (int c = 0; c < 50; c++) {
+			String company = "Company" + c;
+			List<String> picked = names(SHARDS, partitioner.select(company, SHARDS));
+
+			List<String> remaining = new ArrayList<String>(Arrays.asList(SHARDS));
+			for (String shard : SHARDS) {
+				if (!picked.contains(shard)) {
+					remaining.remove(shard);
+					break;
+				}
+			}
+			String[] fewer = remaining.toArray(new String[remaining.size()]);
+			assertEquals(picked, names(fewer, partitioner.select(company, fewer)));
+		}
+	}
+
+	private static List<String> names(String[] shards, int[] picked) {
+		List<String> names = new ArrayList<String>();
+		for (int i : picked) {
+			names.add(shards[i]);
+		}
+		return names;
+	}
+}
@@ -0,0 +1,57 @@
+package no.hib.mod252;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+public class TaskAllocationTest {
+
+	@Test
+	public void defaultDealIsDealtOutInTurn() {
+		TaskAllocation allocation = new TaskAllocation(new long[][] {{1, 1, 1}, {1, 1, 1}}, new int[] {0, 0});
+
+		assertEquals(0, allocation.getEmployee(0));
+		assertEquals(1, allocation.getEmployee(1));
+		assertEquals(0, allocation.getEmployee(2));
+		assertEquals(3, allocation.getTotalCost());
+	}
+
+	@Test
+	public void transfersLowerTheTotalCost() {
+		long[][] costs = {{10, 10}, {1, 1}};
+		TaskAllocation allocation = new TaskAllocation(costs, new int[] {0, 0});
+		assertEquals(11, allocation.getTotalCost());
+
+		allocation.negotiate();
+
+		assertEquals(2, allocation.getTotalCost());
+		assertArrayEquals(new int[] {0, 1}, allocation.getTasks(1));
+		assertEquals(1, allocation.getTransfers());
+	}
+
+	@Test
+	public void swapsRespectTheCapacity() {
+		// Each employee has room for one task only, so the tasks can only be swapped
+		long[][] costs = {{9, 1}, {1, 9}};
+		TaskAllocation allocation = new TaskAllocation(costs, new int[] {1, 1});
+		assertEquals(18, allocation.getTotalCost());
+		assertEquals(Long.MAX_VALUE, allocation.transferDelta(0, 1));
+		assertEquals(-16, allocation.swapDelta(0, 1));
+
+		allocation.negotiate();
+
+		assertEquals(2, allocation.getTotalCost());
+		assertEquals(1, allocation.getSwaps());
+		assertEquals(1, allocation.getEmployee(0));
+		assertEquals(0, allocation.getEmployee(1));
+	}
+
+	@Test
+	public void negotiationEndsWhenStable() {
+		TaskAllocation allocation = new TaskAllocation(new long[][] {{1, 2}, {2, 1}}, new int[] {0, 0});
+
+		assertEquals(0, allocation.negotiate());
+		assertEquals(2, allocation.getTotalCost());
+	}
+}